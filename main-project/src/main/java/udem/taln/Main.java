@@ -1,9 +1,11 @@
 package udem.taln;
 
+import udem.taln.api.LLMService;
 import udem.taln.api.MistralService;
 import udem.taln.api.OllamaService;
 import udem.taln.ner.Analyser;
 import udem.taln.ner.NER;
+import udem.taln.wrapper.trace.Tracer;
 
 import java.io.*;
 import java.util.*;
@@ -22,6 +24,15 @@ public class Main {
             args_map.put(cleanArg.split("=")[0], cleanArg.split("=").length == 1 ? "true" : cleanArg.split("=")[1]);
         }
 
+        // Models load in the background while the text is read and formatted
+        if ("spacy".equals(args_map.get("method")) && args_map.get("model") != null) {
+            NER.prepare(NER.MODE.fromModel(args_map.get("model")));
+        }
+        // Only when the compare branch below runs, the Mistral branch is taken before it
+        if ("true".equals(args_map.get("compare")) && !"mistral".equals(args_map.get("method"))) {
+            NER.prepare(NER.MODE.LG);
+        }
+
         List<String> text = getText();
 
         // Managing Spacy method
@@ -36,27 +47,13 @@ public class Main {
 
         // Managing Ollama method
         else if ((args_map.get("compare") == null || !args_map.get("compare").equals("true")) && args_map.get("method").equals("ollama")) {
-            runOllama(text, true, true);
+            runLLM(new OllamaService(args_map.get("model")), "ollama", text, true, true);
         }
 
         // Managing Mistral AI method
         // https://docs.mistral.ai/getting-started/models/models_overview
         else if (args_map.get("method").equals("mistral")) {
-            Analyser analyser = new Analyser();
-            List<String> toProcess = text.subList(0, 99);
-            var processedText = analyser.format(toProcess, true);
-
-            var mistral = new MistralService(args_map.get("model"));
-            long before = System.nanoTime();
-            var executed = mistral.executeBatch(processedText);
-            long after = System.nanoTime();
-            System.out.println(executed);
-            System.out.println("Time (ms) : " + (after - before) / 1000000.0);
-
-            analyse(executed, analyser);
-
-            Map<String, String> toFile = formatForFile(processedText, executed);
-            writeOutput("en-" + args_map.get("file").split("\\.")[1] + "mistral-" + args_map.get("model") + ".out", toFile);
+            runLLM(new MistralService(args_map.get("model")), "mistral-", text, true, true);
         }
 
         // Comparing between one model and LG Spacy on 1 method
@@ -66,34 +63,48 @@ public class Main {
             var subText = text.subList(0, 100);
             var fText = analyser.format(subText, false);
             List<NER.PSentence> executedOther = List.of();
+            List<NER.PSentence> executedLG;
 
-            if (args_map.get("method").equals("spacy")) executedOther = getExecutedSpacy(fText, analyser, false);
-            else if (args_map.get("method").equals("ollama")) executedOther = runOllama(subText, false, false);
-
-            args_map.replace("model", "en_core_web_lg");
-            List<NER.PSentence> executedLG = getExecutedSpacy(fText, analyser, false);
+            long before = System.nanoTime();
+            if (args_map.get("method").equals("spacy")) {
+                // Both models run at once, each on its own workers
+                var other = NER.MODE.fromModel(args_map.get("model"));
+                var executed = NER.executeAll(EnumSet.of(NER.MODE.LG, other), fText);
+                executedLG = executed.get(NER.MODE.LG);
+                executedOther = executed.get(other);
+            } else {
+                var lg = NER.executeAsync(NER.MODE.LG, fText);
+                if (args_map.get("method").equals("ollama")) executedOther = runLLM(new OllamaService(args_map.get("model")), "ollama", subText, false, false);
+                executedLG = lg.join();
+            }
+            System.out.println("Time (ms) : " + (System.nanoTime() - before) / 1000000.0);
+            if (Tracer.isEnabled()) System.out.println(Tracer.report());
+            System.out.print(NER.memoryReport());
 
             System.out.println(analyser.mcnemar(executedLG, executedOther).toString());
         }
     }
 
-    private static List<NER.PSentence> runOllama(List<String> text, boolean analyse, boolean printToFile) {
+    /**
+     * Runs any backend through {@link LLMService#processAll(Map)}, batched and in parallel as its capabilities allow.
+     *
+     * @param tag name of the backend in the output file.
+     */
+    private static List<NER.PSentence> runLLM(LLMService llm, String tag, List<String> text, boolean analyse, boolean printToFile) {
         Analyser analyser = new Analyser();
         var processedText = analyser.format(text, true);
-        System.out.println("Ollama size to process : "+processedText.size());
+        System.out.println("LLM size to process : " + processedText.size() + " (" + llm.capabilities() + ")");
 
-        var ollama = new OllamaService(args_map.get("model"));
         long before = System.nanoTime();
-        var executed = ollama.execute(processedText);
+        var executed = llm.processAll(processedText).join();
         long after = System.nanoTime();
-//            System.out.println(executed);
         System.out.println("Time (ms) : " + (after - before) / 1000000.0);
 
         if (analyse) analyse(executed, analyser);
 
-        if (printToFile){
+        if (printToFile) {
             Map<String, String> toFile = formatForFile(processedText, executed);
-            writeOutput("en-" + args_map.get("file").split("\\.")[1] + "ollama" + args_map.get("model") + ".out", toFile);
+            writeOutput("en-" + args_map.get("file").split("\\.")[1] + tag + args_map.get("model") + ".out", toFile);
         }
         return executed;
     }
@@ -152,6 +163,8 @@ public class Main {
         if (executed != null) {
 //            System.out.println(executed);
             System.out.println("Time (ms) : " + (after - before) / 1000000.0);
+            if (Tracer.isEnabled()) System.out.println(Tracer.report());
+            System.out.print(NER.memoryReport());
 
             if (analyse) analyse(executed, analyser);
         }
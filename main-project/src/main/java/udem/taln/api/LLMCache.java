@@ -0,0 +1,227 @@
+package udem.taln.api;
+
+import udem.taln.api.utils.LLMUtilities;
+import udem.taln.ner.NER;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers of the backends, keyed by backend, model and prompt, so that running the same text again costs no call.
+ * <ul>
+ *     <li>Memory: the {@code LLM_CACHE_SIZE} most useful keys. When full, a new key only replaces the least recently
+ *     used one if it was asked for more often (counted in a small frequency sketch, halved now and then so that old
+ *     counts fade): a run over new sentences does not flush the ones that keep coming back.</li>
+ *     <li>Disk: every answer, one small file per key under {@code LLM_CACHE_DIR}, kept across runs.</li>
+ * </ul>
+ */
+public final class LLMCache {
+    private static final byte KEY_VERSION = 2;
+    private static volatile LLMCache shared;
+
+    private final int capacity;
+    private final Path dir;
+    private final Map<String, List<NER.TYPE>> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch frequencies;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param capacity keys kept in memory, 0 for none.
+     * @param dir      directory of the disk tier, {@code null} for none.
+     */
+    public LLMCache(int capacity, Path dir) {
+        this.capacity = Math.max(0, capacity);
+        this.dir = dir;
+        this.frequencies = new FrequencySketch(Math.max(16, this.capacity));
+    }
+
+    /**
+     * @return the cache of all backends, sized by {@link LLMUtilities}.
+     */
+    public static LLMCache shared() {
+        if (shared == null) {
+            synchronized (LLMCache.class) {
+                if (shared == null) {
+                    String dir = LLMUtilities.getCacheDir();
+                    shared = new LLMCache(LLMUtilities.getCacheSize(), dir.isBlank() ? null : Path.of(dir));
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * @return the SHA-256 of backend, model and prompt, in hex.
+     */
+    public static String key(String backend, String model, String prompt) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            // Drops the entries of older versions, whose organizations and locations were all taken for NONE
+            digest.update(KEY_VERSION);
+            for (String part : new String[]{backend, model, prompt}) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the cached types, {@code null} when neither tier has them.
+     */
+    public List<NER.TYPE> get(String key) {
+        synchronized (this) {
+            frequencies.increment(key);
+            var types = memory.get(key);
+            if (types != null) {
+                hits.incrementAndGet();
+                return types;
+            }
+        }
+        var types = readDisk(key);
+        if (types == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        diskHits.incrementAndGet();
+        admit(key, types);
+        return types;
+    }
+
+    public void put(String key, List<NER.TYPE> types) {
+        if (types == null || types.isEmpty()) return;
+        var copy = List.copyOf(types);
+        admit(key, copy);
+        writeDisk(key, copy);
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long diskHits() {
+        return diskHits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return memory.size();
+    }
+
+    private synchronized void admit(String key, List<NER.TYPE> types) {
+        if (capacity == 0) return;
+        if (memory.containsKey(key) || memory.size() < capacity) {
+            memory.put(key, types);
+            return;
+        }
+        var eldest = memory.keySet().iterator().next();
+        if (frequencies.frequency(key) <= frequencies.frequency(eldest)) return;
+        memory.remove(eldest);
+        memory.put(key, types);
+    }
+
+    private Path file(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ".txt");
+    }
+
+    private List<NER.TYPE> readDisk(String key) {
+        if (dir == null) return null;
+        try {
+            String content = Files.readString(file(key), StandardCharsets.UTF_8).strip();
+            if (content.isEmpty()) return null;
+            List<NER.TYPE> types = new ArrayList<>();
+            for (String name : content.split(",")) types.add(NER.TYPE.valueOf(name.strip()));
+            return List.copyOf(types);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("[LLMCache] Unreadable entry " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Written to a temporary file then moved, so that a reader never sees half an entry.
+     */
+    private void writeDisk(String key, List<NER.TYPE> types) {
+        if (dir == null) return;
+        var target = file(key);
+        try {
+            Files.createDirectories(target.getParent());
+            var tmp = Files.createTempFile(target.getParent(), key, ".tmp");
+            StringJoiner joiner = new StringJoiner(",");
+            for (var type : types) joiner.add(type.name());
+            Files.writeString(tmp, joiner.toString(), StandardCharsets.UTF_8);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[LLMCache] Could not write " + target + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Count-min sketch: 4 rows of counters capped at 15, the estimate being their minimum.
+     * All counters are halved once {@code 10 x width} increments were counted.
+     */
+    private static final class FrequencySketch {
+        private static final int ROWS = 4;
+        private static final int MAX = 15;
+        private final int[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expected) {
+            int width = Integer.highestOneBit(Math.max(16, expected) - 1) << 1;
+            this.counters = new int[ROWS][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        void increment(String key) {
+            int h = spread(key.hashCode());
+            for (int row = 0; row < ROWS; row++) {
+                int i = index(h, row);
+                if (counters[row][i] < MAX) counters[row][i]++;
+            }
+            if (++additions >= sampleSize) reset();
+        }
+
+        int frequency(String key) {
+            int h = spread(key.hashCode());
+            int min = MAX;
+            for (int row = 0; row < ROWS; row++) min = Math.min(min, counters[row][index(h, row)]);
+            return min;
+        }
+
+        private int index(int h, int row) {
+            int x = h * (0x9E3779B9 + 2 * row + 1);
+            return (x ^ (x >>> 16)) & mask;
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 17;
+            h *= 0xED5AD4BB;
+            return h ^ (h >>> 11);
+        }
+
+        private void reset() {
+            additions /= 2;
+            for (var row : counters) for (int i = 0; i < row.length; i++) row[i] >>>= 1;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package udem.taln.api;
+
+/**
+ * What a backend can do, used by {@link LLMService#processAll(java.util.Map)} to split and schedule the work.
+ *
+ * @param maxBatchSize   sentences one request may carry, 1 if the backend only takes them one by one.
+ * @param maxConcurrency requests in flight at once.
+ * @param streaming      whether the backend can stream its answers.
+ */
+public record LLMCapabilities(int maxBatchSize, int maxConcurrency, boolean streaming) {
+    public LLMCapabilities {
+        maxBatchSize = Math.max(1, maxBatchSize);
+        maxConcurrency = Math.max(1, maxConcurrency);
+    }
+}
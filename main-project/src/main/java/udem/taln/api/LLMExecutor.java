@@ -0,0 +1,36 @@
+package udem.taln.api;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Runs the blocking calls of the backends on virtual threads, at most
+ * {@link LLMCapabilities#maxConcurrency()} at once per backend.
+ */
+final class LLMExecutor {
+    private static final ExecutorService CALLS = Executors.newVirtualThreadPerTaskExecutor();
+    private static final Map<LLMService, Semaphore> PERMITS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private LLMExecutor() {
+    }
+
+    static <T> CompletableFuture<T> submit(LLMService backend, Supplier<T> call) {
+        var permits = PERMITS.computeIfAbsent(backend, b -> new Semaphore(b.capabilities().maxConcurrency()));
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return call.get();
+            } finally {
+                permits.release();
+            }
+        }, CALLS);
+    }
+}
@@ -4,22 +4,132 @@ import udem.taln.ner.Analyser;
 import udem.taln.ner.NER;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+/**
+ * A backend predicting the type of the target of each sentence.
+ * <p>
+ * Only {@link #process(Analyser.Pair)} is required: the other methods run it on virtual threads, at most
+ * {@link LLMCapabilities#maxConcurrency()} at once. A backend with a non-blocking client or a batch endpoint
+ * overrides {@link #processAsync(Analyser.Pair)} and {@link #processBatchAsync(List)}, and declares it in its
+ * {@link #capabilities()}.
+ * <p>
+ * A backend giving a {@link #cache()} has its answers looked up there by {@link #processAll(Map)} before anything is
+ * sent or throttled, and stores the answers it gets with {@link #cacheKey(Analyser.Pair)}.
+ */
 public interface LLMService {
     List<NER.TYPE> process(Analyser.Pair sentence);
 
-    default List<NER.PSentence> execute(Map<Integer, Analyser.Pair> text) {
-        List<NER.PSentence> result = new ArrayList<>();
-        int i = 1;
-        for (var sentence : text.entrySet()) {
-            System.out.println("Ollama process nb : "+i);
-            result.add(new NER.PSentence(sentence.getKey(), this.process(sentence.getValue())));
-            i++;
+    /**
+     * @return one sentence per request, one request at a time, no streaming, unless overridden.
+     */
+    default LLMCapabilities capabilities() {
+        return new LLMCapabilities(1, 1, false);
+    }
+
+    /**
+     * @return where answers are looked up and stored, {@code null} for none.
+     */
+    default LLMCache cache() {
+        return null;
+    }
+
+    default String getModel() {
+        return "";
+    }
+
+    /**
+     * @return the key of the sentence for this backend and model, as used in {@link #cache()}.
+     */
+    default String cacheKey(Analyser.Pair sentence) {
+        return LLMCache.key(getClass().getSimpleName(), getModel(), getFullPrompt(sentence));
+    }
+
+    default CompletableFuture<List<NER.TYPE>> processAsync(Analyser.Pair sentence) {
+        return LLMExecutor.submit(this, () -> process(sentence));
+    }
+
+    /**
+     * @param sentences at most {@link LLMCapabilities#maxBatchSize()} sentences.
+     * @return the types of each sentence, in their order.
+     */
+    default CompletableFuture<List<List<NER.TYPE>>> processBatchAsync(List<Analyser.Pair> sentences) {
+        List<CompletableFuture<List<NER.TYPE>>> calls = new ArrayList<>(sentences.size());
+        for (var sentence : sentences) calls.add(processAsync(sentence));
+        return CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> calls.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * Splits the sentences into the requests of {@link #processAll(Map)}.
+     *
+     * @return consecutive slices of the sentences, in order, of {@link LLMCapabilities#maxBatchSize()} sentences
+     * unless overridden.
+     */
+    default List<List<Analyser.Pair>> batches(List<Analyser.Pair> sentences) {
+        int batchSize = capabilities().maxBatchSize();
+        List<List<Analyser.Pair>> batches = new ArrayList<>();
+        for (int from = 0; from < sentences.size(); from += batchSize) {
+            batches.add(sentences.subList(from, Math.min(sentences.size(), from + batchSize)));
+        }
+        return batches;
+    }
+
+    /**
+     * Runs the whole text, in the {@link #batches(List)} of the backend sent side by side, those found in the
+     * {@link #cache()} being answered from there.
+     *
+     * @return the predicted types, in id order.
+     */
+    default CompletableFuture<List<NER.PSentence>> processAll(Map<Integer, Analyser.Pair> text) {
+        var ordered = new TreeMap<>(text);
+        var cache = cache();
+        List<NER.PSentence> cached = new ArrayList<>();
+        if (cache != null) {
+            for (var it = ordered.entrySet().iterator(); it.hasNext(); ) {
+                var entry = it.next();
+                var types = cache.get(cacheKey(entry.getValue()));
+                if (types == null) continue;
+                cached.add(new NER.PSentence(entry.getKey(), types));
+                it.remove();
+            }
         }
+        List<Integer> ids = new ArrayList<>(ordered.keySet());
+        List<Analyser.Pair> sentences = new ArrayList<>(ordered.values());
+        boolean single = capabilities().maxBatchSize() == 1;
 
-        return result;
+        List<CompletableFuture<List<List<NER.TYPE>>>> calls = new ArrayList<>();
+        for (var chunk : batches(sentences)) {
+            calls.add(single ? processAsync(chunk.getFirst()).thenApply(Collections::singletonList) : processBatchAsync(chunk));
+        }
+        return CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            List<NER.PSentence> result = new ArrayList<>(ids.size() + cached.size());
+            int i = 0;
+            for (var call : calls) {
+                for (var types : call.join()) result.add(new NER.PSentence(ids.get(i++), types));
+            }
+            if (cached.isEmpty()) return result;
+            result.addAll(cached);
+            result.sort(Comparator.comparingInt(NER.PSentence::id));
+            return result;
+        });
+    }
+
+    /**
+     * Same as {@link #processAll(Map)}, failing with the exception of the backend itself.
+     */
+    default List<NER.PSentence> execute(Map<Integer, Analyser.Pair> text) {
+        try {
+            return processAll(text).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
     }
 
     default String getFullPrompt(Analyser.Pair sentence) {
@@ -14,10 +14,13 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.*;
+import java.util.function.ToIntFunction;
 import java.util.regex.Pattern;
 
 /**
@@ -36,12 +39,15 @@ public class MistralService implements LLMService {
     private final String baseUrl;
     private final HttpClient http;
     private final ObjectMapper om;
-    private static final TokenBucket BUCKET =
-            new TokenBucket(MistralUtilities.getPermitsPerSecond(), 1);
-    private static final Cooldown COOLDOWN =
-            new Cooldown(MistralUtilities.getMax429Strikes(), MistralUtilities.getCooldownMs());
-
-    private static final Map<String, NER.TYPE> MEMO = new java.util.concurrent.ConcurrentHashMap<>();
+    // Parsing and retry continuations, never a pooled platform thread
+    private static final ExecutorService ASYNC = Executors.newVirtualThreadPerTaskExecutor();
+    private static final AimdController AIMD = new AimdController(MistralUtilities.getQps(),
+            MistralUtilities.getMinQps(), MistralUtilities.getMaxQps(), MistralUtilities.getQpsStep(),
+            MistralUtilities.getMaxInFlight(), ASYNC);
+    // Only tokens: AIMD already paces the requests
+    private static final UsageLimiter USAGE = UsageLimiter.perMinute(0,
+            MistralUtilities.getPromptTokensPerMinute(), MistralUtilities.getCompletionTokensPerMinute());
+    private static final TokenEstimator TOKENS = new TokenEstimator(MistralUtilities.getCompletionTokensPerLine());
 
 
     public MistralService(String model) {
@@ -67,242 +73,333 @@ public class MistralService implements LLMService {
         System.out.println("Using model: " + model);
     }
 
-    private static final RateLimiter RL = new RateLimiter(
-            MistralUtilities.getQps());
+    private static final long BASE_BACKOFF_MS = 800L;
+    private static final Pattern NUMBERED = Pattern.compile("^\\s*(\\d{1,6})\\s*[).:-]");
 
     @Override
     public List<NER.TYPE> process(Analyser.Pair sentence) {
-        RL.acquire(); // throttle
+        return processAsync(sentence).join();
+    }
+
+    /**
+     * Same as {@link #process(Analyser.Pair)} without holding a thread while the request is throttled, sent or
+     * retried. Rate and requests in flight are those of the {@link AimdController}.
+     */
+    @Override
+    public CompletableFuture<List<NER.TYPE>> processAsync(Analyser.Pair sentence) {
+        String prompt = getFullPrompt(sentence);
+        HttpRequest req;
         try {
-            String fullPrompt = getFullPrompt(sentence);
-
-            // Request
-            Map<String, Object> body = new LinkedHashMap<>();
-            body.put("model", model);
-            body.put("messages", List.of(
-                    Map.of("role", "system", "content", "You are a concise assistant."),
-                    Map.of("role", "user", "content", fullPrompt)
-            ));
-            // values
-            body.put("temperature", 0.0);
-            body.put("top_p", 1.0);
-            // body.put("stop", List.of("\n\n"));
-
-            String json = om.writeValueAsString(body);
-
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create(baseUrl + CHAT_COMPLETIONS))
-                    .header("Authorization", "Bearer " + apiKey)
-                    .header("Content-Type", "application/json")
-                    .header("Accept", "application/json")
-                    .timeout(Duration.ofSeconds(MistralUtilities.getRequestTimeoutSeconds()))
-                    .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
-                    .build();
-
-            // throttle
-            BUCKET.acquire();
-
-            String cacheKey = sentence.sentence; // cache just in case
-            NER.TYPE cached = MEMO.get(cacheKey);
-            if (cached != null) return List.of(cached);
-
-            HttpResponse<String> resp = sendWithRetries429(req, MistralUtilities.getMaxRetries(), MistralUtilities.getMaxTotalWaitMs());
-            if (resp.statusCode() / 100 != 2) {
-                System.err.println("Mistral API error: " + resp.statusCode() + " -> " + resp.body());
-                return List.of(NER.TYPE.NONE);
-            }
+            req = request(prompt);
+        } catch (IOException e) {
+            System.err.println("Mistral API call failed: " + e.getMessage());
+            return CompletableFuture.completedFuture(List.of(NER.TYPE.NONE));
+        }
+        return send(req, TOKENS.estimate(prompt, 1))
+                .thenApply(resp -> {
+                    if (resp.statusCode() / 100 != 2) {
+                        System.err.println("Mistral API error: " + resp.statusCode() + " -> " + resp.body());
+                        return List.of(NER.TYPE.NONE);
+                    }
+                    var types = parseSingle(resp.body());
+                    if (types == null) return List.of(NER.TYPE.NONE);
+                    cache().put(cacheKey(sentence), types);
+                    return types;
+                })
+                .exceptionally(e -> {
+                    System.err.println("Mistral API call failed: " + unwrap(e).getMessage());
+                    return List.of(NER.TYPE.NONE);
+                });
+    }
 
+    /**
+     * @return the types of the answer, {@code null} when the response holds no label.
+     */
+    private List<NER.TYPE> parseSingle(String body) {
+        try {
             // reponse : { choices: [ { message: { role, content } } ] }
-            Map<?, ?> root = om.readValue(resp.body(), Map.class);
+            Map<?, ?> root = om.readValue(body, Map.class);
             Object choicesObj = root.get("choices");
             if (!(choicesObj instanceof List<?> choices) || choices.isEmpty()) {
-                return List.of(NER.TYPE.NONE);
+                return null;
             }
             Object first = choices.getFirst();
-            if (!(first instanceof Map<?, ?> f)) return List.of(NER.TYPE.NONE);
+            if (!(first instanceof Map<?, ?> f)) return null;
             Object message = f.get("message");
-            if (!(message instanceof Map<?, ?> msg)) return List.of(NER.TYPE.NONE);
+            if (!(message instanceof Map<?, ?> msg)) return null;
             Object content = msg.get("content");
             String response = content == null ? "" : content.toString();
 
             return ResponseHelper.getTypes(response);
-
-        } catch (Exception e) {
+        } catch (IOException e) {
             System.err.println("Mistral API call failed: " + e.getMessage());
-            return List.of(NER.TYPE.NONE);
+            return null;
         }
     }
 
-    public List<NER.PSentence> executeBatch(Map<Integer, Analyser.Pair> text) {
-        List<NER.PSentence> result = new ArrayList<>();
+    @Override
+    public LLMCache cache() {
+        return LLMCache.shared();
+    }
 
-        var analysed = this.processBatch(new ArrayList<>(text.values()));
-        int i = 0;
-        for (var sentence : text.entrySet()) {
-            result.add(new NER.PSentence(sentence.getKey(), List.of(analysed.get(i++))));
-        }
+    /**
+     * Batches go through the batch prompt, one line per sentence, up to {@link MistralUtilities#getMaxInFlight()}
+     * requests in flight.
+     */
+    @Override
+    public LLMCapabilities capabilities() {
+        return new LLMCapabilities(MistralUtilities.getMaxBatchSize(), MistralUtilities.getMaxInFlight(), false);
+    }
+
+    /**
+     * Packs the sentences into batches of at most {@link MistralUtilities#getMaxBatchTokens()} estimated tokens
+     * (prompt and answers) and {@link MistralUtilities#getMaxBatchSize()} sentences.
+     */
+    @Override
+    public List<List<Analyser.Pair>> batches(List<Analyser.Pair> sentences) {
+        int header = TOKENS.promptTokens(batchHeader());
+        int perAnswer = TOKENS.completionTokens(1);
+        return pack(sentences, p -> TOKENS.promptTokens(p.sentence) + perAnswer, header,
+                MistralUtilities.getMaxBatchTokens(), MistralUtilities.getMaxBatchSize());
+    }
 
-        return result;
+    /**
+     * Greedy packing in order: a batch is closed when the next sentence would take it over the budget or the cap.
+     * A sentence over the budget on its own gets a batch of its own.
+     *
+     * @param cost   tokens of one sentence, its answer included.
+     * @param header tokens of the part of the prompt every batch repeats.
+     */
+    static List<List<Analyser.Pair>> pack(List<Analyser.Pair> sentences, ToIntFunction<Analyser.Pair> cost,
+                                          int header, int maxTokens, int maxSentences) {
+        List<List<Analyser.Pair>> batches = new ArrayList<>();
+        int from = 0;
+        int tokens = header;
+        for (int i = 0; i < sentences.size(); i++) {
+            int c = cost.applyAsInt(sentences.get(i));
+            if (i > from && (tokens + c > maxTokens || i - from >= maxSentences)) {
+                batches.add(sentences.subList(from, i));
+                from = i;
+                tokens = header;
+            }
+            tokens += c;
+        }
+        if (from < sentences.size()) batches.add(sentences.subList(from, sentences.size()));
+        return batches;
     }
 
-    private List<NER.TYPE> processBatch(List<Analyser.Pair> sentences) {
-        if (sentences == null || sentences.isEmpty()) return List.of();
+    @Override
+    public CompletableFuture<List<List<NER.TYPE>>> processBatchAsync(List<Analyser.Pair> sentences) {
+        return processBatchTypes(sentences).thenApply(types -> types.stream().map(List::of).toList());
+    }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append(getFullPrompt(new Analyser.Pair("", "")));
-        sb.append("""
-                Output format (STRICT):
-                        ANSWER [[PERSON]]   or   ANSWER [[ORGANIZATION]]   or   ANSWER [[LOCATION]]   or   ANSWER [[NONE]]
+    private String batchHeader() {
+        return getFullPrompt(new Analyser.Pair("", "")) + """
+                Output format (STRICT), one line per sentence, starting with its number:
+                        0) ANSWER [[PERSON]]   or   0) ANSWER [[ORGANIZATION]]   or   0) ANSWER [[LOCATION]]   or   0) ANSWER [[NONE]]
                         No explanation. No extra words. Exactly that format.
-                """);
+                """;
+    }
+
+    private CompletableFuture<List<NER.TYPE>> processBatchTypes(List<Analyser.Pair> sentences) {
+        if (sentences == null || sentences.isEmpty()) return CompletableFuture.completedFuture(List.of());
+
+        StringBuilder sb = new StringBuilder(batchHeader());
         for (int i = 0; i < sentences.size(); i++) {
             sb.append(i).append(") ").append(sentences.get(i).sentence).append('\n');
         }
-        String fullPrompt = sb.toString();
-
-        // messages
-        List<Map<String, Object>> msgs = new ArrayList<>();
-        msgs.add(Map.of("role", "system", "content", "You are a concise assistant."));
-        msgs.add(Map.of("role", "user", "content", fullPrompt));
-
-        Map<String, Object> body = new LinkedHashMap<>();
-        body.put("model", model);
-        body.put("messages", msgs);
-        body.put("temperature", 0.0);
-        body.put("top_p", 1.0);
 
+        HttpRequest req;
         try {
-            BUCKET.acquire();
-            String json = om.writeValueAsString(body);
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create(baseUrl + CHAT_COMPLETIONS))
-                    .header("Authorization", "Bearer " + apiKey)
-                    .header("Content-Type", "application/json")
-                    .header("Accept", "application/json")
-                    .timeout(Duration.ofSeconds(MistralUtilities.getRequestTimeoutSeconds()))
-                    .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
-                    .build();
-
-            HttpResponse<String> resp = sendWithRetries429(req,
-                    MistralUtilities.getMaxRetries(),
-                    MistralUtilities.getMaxTotalWaitMs());
-
-            if (resp.statusCode() / 100 != 2) {
-                System.err.println("Mistral API error (batch): " + resp.statusCode() + " -> " + resp.body());
-                return Collections.nCopies(sentences.size(), NER.TYPE.NONE);
-            }
+            req = request(sb.toString());
+        } catch (IOException e) {
+            System.err.println("Batch call failed: " + e.getMessage());
+            return CompletableFuture.completedFuture(Collections.nCopies(sentences.size(), NER.TYPE.NONE));
+        }
+        return send(req, TOKENS.estimate(sb.toString(), sentences.size()))
+                .thenApply(resp -> {
+                    if (resp.statusCode() / 100 != 2) {
+                        System.err.println("Mistral API error (batch): " + resp.statusCode() + " -> " + resp.body());
+                        return Collections.nCopies(sentences.size(), NER.TYPE.NONE);
+                    }
+                    return parseBatch(resp.body(), sentences);
+                })
+                .exceptionally(e -> {
+                    System.err.println("Batch call failed: " + unwrap(e).getMessage());
+                    return Collections.nCopies(sentences.size(), NER.TYPE.NONE);
+                });
+    }
 
-            Map<?, ?> root = om.readValue(resp.body(), Map.class);
+    private List<NER.TYPE> parseBatch(String body, List<Analyser.Pair> sentences) {
+        try {
+            Map<?, ?> root = om.readValue(body, Map.class);
             List<?> choices = (List<?>) root.get("choices");
             if (choices == null || choices.isEmpty())
                 return Collections.nCopies(sentences.size(), NER.TYPE.NONE);
             Map<?, ?> msg = (Map<?, ?>) ((Map<?, ?>) choices.getFirst()).get("message");
-            String content = String.valueOf(msg.get("content"));
+            var parsed = parseBatchLines(String.valueOf(msg.get("content")), sentences.size());
 
-            String[] lines = content.split("\\r?\\n");
             List<NER.TYPE> out = new ArrayList<>(sentences.size());
-            int i = 0;
-            for (String line : lines) {
-                System.out.println("RAW: " + line);
-                if (i >= sentences.size()) break;
-                String token = ResponseHelper.extractBetweenDoubleBrackets(line);
-                if (token == null || token.isBlank()) {
-                    token = greedyLabelRegex(line);
+            for (int i = 0; i < sentences.size(); i++) {
+                NER.TYPE t = parsed.get(i);
+                if (t == null) {
+                    out.add(NER.TYPE.NONE);
+                    continue;
                 }
-                System.out.println("TOKEN: " + token);
-                String norm = normalizeToEnumLabel(token);
-                System.out.println("NORM: " + norm);
-                NER.TYPE t = NER.mapType(norm);
                 out.add(t);
-                MEMO.putIfAbsent(sentences.get(i).sentence, t);
-                i++;
+                // Keyed by sentence like a single answer, so either prompt finds it in processAll
+                cache().put(cacheKey(sentences.get(i)), List.of(t));
             }
-            while (out.size() < sentences.size()) out.add(NER.TYPE.NONE);
             return out;
-
         } catch (Exception e) {
             System.err.println("Batch call failed: " + e.getMessage());
-            return java.util.Collections.nCopies(sentences.size(), NER.TYPE.NONE);
+            return Collections.nCopies(sentences.size(), NER.TYPE.NONE);
         }
     }
 
-    private HttpResponse<String> sendWithRetries429(HttpRequest req,
-                                                    int maxRetries,
-                                                    long maxTotalWaitMs) throws IOException, InterruptedException {
-        int attempt = 0;
-        long waited = 0L;
-        long baseBackoff = 800L;
-        ThreadLocalRandom rnd = ThreadLocalRandom.current();
-
-        while (true) {
-            attempt++;
-            HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-            int code = resp.statusCode();
-
-            if (code / 100 == 2) {
-                COOLDOWN.reset();
-                return resp;
-            }
+    /**
+     * Maps each answer line to its sentence by the number it starts with, or by its rank among the answer lines
+     * when it has none. Blank lines are skipped.
+     *
+     * @return the type of each sentence, {@code null} for those left without an answer or whose line has no label.
+     */
+    static List<NER.TYPE> parseBatchLines(String content, int size) {
+        List<NER.TYPE> out = new ArrayList<>(Collections.nCopies(size, null));
+        int rank = 0;
+        for (String line : content.split("\\r?\\n")) {
+            if (line.isBlank()) continue;
+            var numbered = NUMBERED.matcher(line);
+            int index = numbered.find() ? Integer.parseInt(numbered.group(1)) : rank;
+            rank++;
+            if (index < 0 || index >= size || out.get(index) != null) continue;
+            String token = ResponseHelper.extractBetweenDoubleBrackets(line);
+            NER.TYPE type = ResponseHelper.toType(token);
+            if (type == null) type = ResponseHelper.toType(ResponseHelper.findLabel(line));
+            // Numbered but without a label: left unanswered, not taken for NONE
+            if (type == null) continue;
+            out.set(index, type);
+        }
+        return out;
+    }
 
-            // 429 -> Retry-After if present
-            if (code == 429 && attempt <= maxRetries) {
-                long sleepMs = -1L;
-                Optional<String> retryAfter = resp.headers().firstValue("Retry-After");
-                if (retryAfter.isPresent()) {
-                    try {
-                        long secs = Long.parseLong(retryAfter.get().trim());
-                        sleepMs = Math.max(0, secs * 1000L);
-                    } catch (NumberFormatException ignore) {
-                    }
-                }
-                if (sleepMs < 0) {
-                    long pow = Math.min(13, attempt);
-                    long backoff = (long) (baseBackoff * Math.pow(2, pow - 1));
-                    sleepMs = Math.min(8000L, backoff); // cap 8s
-                    sleepMs = rnd.nextLong(sleepMs + 1);
-                }
-                if (waited + sleepMs > maxTotalWaitMs) return resp;
-                Thread.sleep(sleepMs);
-                waited += sleepMs;
-                continue;
-            }
+    private HttpRequest request(String fullPrompt) throws IOException {
+        // messages
+        List<Map<String, Object>> msgs = new ArrayList<>();
+        msgs.add(Map.of("role", "system", "content", "You are a concise assistant."));
+        msgs.add(Map.of("role", "user", "content", fullPrompt));
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", model);
+        body.put("messages", msgs);
+        // values
+        body.put("temperature", 0.0);
+        body.put("top_p", 1.0);
+
+        String json = om.writeValueAsString(body);
+        return HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + CHAT_COMPLETIONS))
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .timeout(Duration.ofSeconds(MistralUtilities.getRequestTimeoutSeconds()))
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                .build();
+    }
 
-            if (code == 429) COOLDOWN.on429();
+    /**
+     * Sends the request with the 429/5xx retries of {@link #retry(HttpRequest, HttpResponse, TokenEstimator.Estimate,
+     * int, long)}. Each attempt first reserves its estimated tokens from {@link #USAGE}, then waits for a permit of
+     * {@link #AIMD} and gives it back with its outcome.
+     */
+    private CompletableFuture<HttpResponse<String>> send(HttpRequest req, TokenEstimator.Estimate estimate) {
+        return attempt(req, estimate, 1, System.nanoTime());
+    }
 
-            if (code / 100 == 5 && attempt <= maxRetries) {
-                long sleepMs = rnd.nextLong(1 + Math.min(8000L, (long) (baseBackoff * Math.pow(2, attempt - 1))));
-                if (waited + sleepMs > maxTotalWaitMs) return resp;
-                Thread.sleep(sleepMs);
-                waited += sleepMs;
-                continue;
-            }
+    private CompletableFuture<HttpResponse<String>> attempt(HttpRequest req, TokenEstimator.Estimate estimate,
+                                                            int attempt, long start) {
+        var reservation = USAGE.reserve(estimate.usage());
+        return CompletableFuture.supplyAsync(() -> null,
+                        CompletableFuture.delayedExecutor(reservation.delayNanos(), TimeUnit.NANOSECONDS, ASYNC))
+                .thenCompose(ignored -> AIMD.acquire())
+                .thenCompose(permit -> http.sendAsync(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                        .whenComplete((resp, error) -> {
+                            if (resp != null) permit.release(outcome(resp.statusCode()), retryAfterMs(resp));
+                            else permit.release(unwrap(error) instanceof HttpTimeoutException
+                                    ? AimdController.Outcome.OVERLOAD : AimdController.Outcome.NEUTRAL, 0);
+                            settle(reservation, estimate, resp);
+                        }))
+                .thenComposeAsync(resp -> retry(req, resp, estimate, attempt, start), ASYNC);
+    }
 
-            return resp;
+    /**
+     * Swaps the reserved tokens for those of the {@code usage} block, and corrects the next estimates with them.
+     * A request without response or refused is taken as having cost one request and no tokens.
+     */
+    private void settle(UsageLimiter.Reservation reservation, TokenEstimator.Estimate estimate,
+                        HttpResponse<String> resp) {
+        if (resp == null || resp.statusCode() / 100 != 2) {
+            USAGE.settle(reservation, new UsageLimiter.Usage(1, 0, 0));
+            return;
         }
+        int prompt = 0;
+        int completion = 0;
+        try {
+            var usage = om.readTree(resp.body()).path("usage");
+            prompt = usage.path("prompt_tokens").asInt(0);
+            completion = usage.path("completion_tokens").asInt(0);
+        } catch (IOException ignored) {
+        }
+        if (prompt <= 0 && completion <= 0) return; // no usage block, the estimate stands
+        USAGE.settle(reservation, new UsageLimiter.Usage(1, prompt, completion));
+        TOKENS.observe(estimate, prompt, completion);
     }
 
-    private static String greedyLabelRegex(String s) {
-        if (s == null) return null;
-        Pattern P = Pattern.compile(
-                "\\b(PERSON|ORGANIZATION|ORGANISATION|LOCATION|LOC|ORG|GPE|PER|NONE)\\b",
-                Pattern.CASE_INSENSITIVE);
-        var m = P.matcher(s);
-        return m.find() ? m.group(1) : null;
+    private static AimdController.Outcome outcome(int code) {
+        if (code / 100 == 2) return AimdController.Outcome.SUCCESS;
+        if (code == 429 || code / 100 == 5) return AimdController.Outcome.OVERLOAD;
+        return AimdController.Outcome.NEUTRAL;
     }
 
-    private static String normalizeToEnumLabel(String raw) {
-        if (raw == null) return "NONE";
-        String t = raw.replaceAll("[^A-Za-z]", "").toUpperCase();
-        // alias courants
-        if (t.equals("PER")) t = "PERSON";
-        if (t.equals("ORG") || t.equals("ORGANISATION")) t = "ORGANIZATION";
-        if (t.equals("LOC") || t.equals("GPE")) t = "LOCATION";
-        if (!(t.equals("PERSON") || t.equals("ORGANIZATION") || t.equals("LOCATION") || t.equals("NONE"))) {
-            t = "NONE";
+    private static long retryAfterMs(HttpResponse<String> resp) {
+        return AimdController.retryAfterMs(resp.headers().firstValue("Retry-After").orElse(null), Instant.now());
+    }
+
+    /**
+     * Retries 429 and 5xx, with a new reservation each time, within {@link MistralUtilities#getMaxRetries()} attempts and
+     * {@link MistralUtilities#getMaxTotalWaitMs()} since the first one. A 429 goes straight back to {@link #AIMD},
+     * which has cut its rate and holds permits for the Retry-After; a 5xx first waits a capped jittered exponential
+     * backoff. Waits are scheduled, no thread sleeps.
+     */
+    private CompletableFuture<HttpResponse<String>> retry(HttpRequest req, HttpResponse<String> resp,
+                                                          TokenEstimator.Estimate estimate, int attempt, long start) {
+        int code = resp.statusCode();
+        if (code / 100 == 2 || attempt > MistralUtilities.getMaxRetries()) {
+            return CompletableFuture.completedFuture(resp);
+        }
+
+        long sleepMs;
+        if (code == 429) {
+            sleepMs = retryAfterMs(resp);
+        } else if (code / 100 == 5) {
+            sleepMs = ThreadLocalRandom.current()
+                    .nextLong(1 + Math.min(8000L, (long) (BASE_BACKOFF_MS * Math.pow(2, attempt - 1))));
+        } else {
+            return CompletableFuture.completedFuture(resp);
         }
-        return t;
+
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (waitedMs + sleepMs > MistralUtilities.getMaxTotalWaitMs()) return CompletableFuture.completedFuture(resp);
+        if (code == 429) return attempt(req, estimate, attempt + 1, start);
+        return CompletableFuture.supplyAsync(() -> null,
+                        CompletableFuture.delayedExecutor(sleepMs, TimeUnit.MILLISECONDS, ASYNC))
+                .thenCompose(ignored -> attempt(req, estimate, attempt + 1, start));
     }
 
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    @Override
     public String getModel() {
         return model;
     }
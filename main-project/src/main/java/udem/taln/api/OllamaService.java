@@ -45,7 +45,10 @@ public class OllamaService implements LLMService {
 
             String response = result.getResponse();
             // extract and map
-            return ResponseHelper.getTypes(response);
+            var types = ResponseHelper.getTypes(response);
+            if (types == null) return List.of(NER.TYPE.NONE);
+            cache().put(cacheKey(sentence), types);
+            return types;
 //            return Arrays.stream(result.getResponse().split(",")).map(NER::mapType).toList();
         } catch (Exception e) {
             System.err.println("Could not setup Ollama API: " + e.getMessage());
@@ -53,6 +56,20 @@ public class OllamaService implements LLMService {
         return null;
     }
 
+    /**
+     * One prompt per sentence, {@link OllamaUtilities#getMaxConcurrency()} of them at once.
+     */
+    @Override
+    public LLMCapabilities capabilities() {
+        return new LLMCapabilities(1, OllamaUtilities.getMaxConcurrency(), false);
+    }
+
+    @Override
+    public LLMCache cache() {
+        return LLMCache.shared();
+    }
+
+    @Override
     public String getModel() {
         return model;
     }
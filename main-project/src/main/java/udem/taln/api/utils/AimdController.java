@@ -0,0 +1,217 @@
+package udem.taln.api.utils;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive rate and concurrency limit for an API with an unknown quota (additive increase, multiplicative
+ * decrease, as TCP does with its window).
+ * <ul>
+ *     <li>Each success raises the rate by {@code rateStep} requests/s, and the concurrency by one every
+ *     {@code limit} successes, up to their maximums.</li>
+ *     <li>A 429, a 5xx or a failed request divides both by two, unless the request was let go before the last
+ *     decrease: a burst of errors from requests sent together only counts once.</li>
+ *     <li>A {@code Retry-After} holds every permit until it is over.</li>
+ * </ul>
+ * Permits are futures completed when both a concurrency slot and the next rate slot are there: no thread sleeps,
+ * and the lock is only held to update the counters.
+ */
+public final class AimdController {
+    private static final double DECREASE = 0.5;
+
+    private final double minRate;
+    private final double maxRate;
+    private final double rateStep;
+    private final int maxLimit;
+    private final Executor executor;
+    private final Queue<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+
+    private double rate;
+    private int limit;
+    private int inFlight;
+    private int successes;
+    private long nextSlot = System.nanoTime();
+    private long pausedUntil = System.nanoTime();
+    private long lastDecrease = System.nanoTime();
+
+    /**
+     * Outcome of a request, given back with its permit.
+     */
+    public enum Outcome {
+        SUCCESS,
+        /**
+         * 429 or 5xx or no response: the API is asked too much.
+         */
+        OVERLOAD,
+        /**
+         * Any other error, which says nothing about the load.
+         */
+        NEUTRAL
+    }
+
+    /**
+     * A request allowed to go, to release once it is done.
+     */
+    public final class Permit {
+        private final long granted;
+        private boolean released;
+
+        private Permit(long granted) {
+            this.granted = granted;
+        }
+
+        /**
+         * @param retryAfterMs time the API asked to wait before the next request, 0 if none.
+         */
+        public void release(Outcome outcome, long retryAfterMs) {
+            List<Grant> next;
+            synchronized (AimdController.this) {
+                if (released) return;
+                released = true;
+                inFlight--;
+                update(outcome, retryAfterMs, granted);
+                next = grant();
+            }
+            complete(next);
+        }
+    }
+
+    /**
+     * @param initialRate starting requests per second.
+     * @param minRate     rate under which decreases stop.
+     * @param maxRate     rate over which increases stop.
+     * @param rateStep    requests per second added on each success.
+     * @param maxLimit    requests in flight at once the concurrency can grow to, it starts at one.
+     * @param executor    completes the permits granted for a later rate slot, once it comes.
+     */
+    public AimdController(double initialRate, double minRate, double maxRate, double rateStep, int maxLimit,
+                          Executor executor) {
+        this.minRate = Math.max(minRate, 0.0001);
+        this.maxRate = Math.max(this.minRate, maxRate);
+        this.rate = Math.clamp(initialRate, this.minRate, this.maxRate);
+        this.rateStep = Math.max(0, rateStep);
+        this.maxLimit = Math.max(1, maxLimit);
+        this.executor = executor;
+        this.limit = 1;
+    }
+
+    /**
+     * @return a permit, completed once the request may go.
+     */
+    public CompletableFuture<Permit> acquire() {
+        var future = new CompletableFuture<Permit>();
+        List<Grant> granted;
+        synchronized (this) {
+            waiting.add(future);
+            granted = grant();
+        }
+        complete(granted);
+        return future;
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void update(Outcome outcome, long retryAfterMs, long granted) {
+        long now = System.nanoTime();
+        if (retryAfterMs > 0) pausedUntil = Math.max(pausedUntil, now + TimeUnit.MILLISECONDS.toNanos(retryAfterMs));
+        switch (outcome) {
+            case SUCCESS -> {
+                rate = Math.min(maxRate, rate + rateStep);
+                if (++successes >= limit) {
+                    successes = 0;
+                    limit = Math.min(maxLimit, limit + 1);
+                }
+            }
+            case OVERLOAD -> {
+                if (granted - lastDecrease < 0) return;
+                lastDecrease = now;
+                successes = 0;
+                rate = Math.max(minRate, rate * DECREASE);
+                limit = Math.max(1, (int) (limit * DECREASE));
+            }
+            case NEUTRAL -> {
+            }
+        }
+    }
+
+    /**
+     * @param value a {@code Retry-After} header, in seconds or as an HTTP date.
+     * @return the time to wait, 0 when there is none or it cannot be read.
+     */
+    public static long retryAfterMs(String value, Instant now) {
+        if (value == null || value.isBlank()) return 0;
+        String v = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(v) * 1000L);
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            var date = ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Math.max(0, date.toEpochMilli() - now.toEpochMilli());
+        } catch (DateTimeParseException ignored) {
+            return 0;
+        }
+    }
+
+    private long interval() {
+        return (long) (1_000_000_000L / rate);
+    }
+
+    /**
+     * Takes the waiting requests allowed by the concurrency, each one with its own rate slot.
+     * Called with the lock held, the futures are completed after it is released.
+     */
+    private List<Grant> grant() {
+        List<Grant> granted = new ArrayList<>();
+        while (inFlight < limit && !waiting.isEmpty()) {
+            var future = waiting.poll();
+            if (future.isDone()) continue;
+            inFlight++;
+            long now = System.nanoTime();
+            long slot = Math.max(Math.max(now, nextSlot), pausedUntil);
+            nextSlot = slot + interval();
+            granted.add(new Grant(future, new Permit(now), slot - now));
+        }
+        return granted;
+    }
+
+    private record Grant(CompletableFuture<Permit> future, Permit permit, long delayNanos) {
+    }
+
+    private void complete(List<Grant> granted) {
+        for (var grant : granted) {
+            if (grant.delayNanos() <= 0) {
+                complete(grant.future(), grant.permit());
+            } else {
+                CompletableFuture.delayedExecutor(grant.delayNanos(), TimeUnit.NANOSECONDS, executor)
+                        .execute(() -> complete(grant.future(), grant.permit()));
+            }
+        }
+    }
+
+    /**
+     * A caller that gave up on its future keeps no slot.
+     */
+    private static void complete(CompletableFuture<Permit> future, Permit permit) {
+        if (!future.complete(permit)) permit.release(Outcome.NEUTRAL, 0);
+    }
+}
@@ -0,0 +1,44 @@
+package udem.taln.api.utils;
+
+import java.util.Properties;
+
+/**
+ * Settings shared by all LLM backends.
+ */
+public class LLMUtilities {
+
+    /**
+     * @return answers kept in memory by {@link udem.taln.api.LLMCache}, 0 for none.
+     */
+    public static int getCacheSize() {
+        String v = get("LLM_CACHE_SIZE");
+        if (v != null) try {
+            return Math.max(0, Integer.parseInt(v));
+        } catch (NumberFormatException ignored) {
+        }
+        return 10_000;
+    }
+
+    /**
+     * @return directory of the answers kept across runs, blank for none.
+     */
+    public static String getCacheDir() {
+        String v = get("LLM_CACHE_DIR");
+        return v == null ? ".llm-cache" : v;
+    }
+
+    private static String get(String key) {
+        String env = System.getenv(key);
+        if (env != null && !env.isBlank()) return env.trim();
+        try (var is = LLMUtilities.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (is != null) {
+                var p = new Properties();
+                p.load(is);
+                String v = p.getProperty(key);
+                if (v != null) return v.trim();
+            }
+        } catch (Exception ignored) {
+        }
+        return null;
+    }
+}
@@ -83,6 +83,9 @@ public class MistralUtilities {
         return 60_000L;
     }
 
+    /**
+     * @return requests per second to start with, the rate then adapts to the responses.
+     */
     public static double getQps() {
         String env = System.getenv("MISTRAL_QPS");
         if (env != null && !env.isBlank()) try {
@@ -101,30 +104,192 @@ public class MistralUtilities {
         return 0.5;
     }
 
-    public static double getPermitsPerSecond() {
-        String env = System.getenv("MISTRAL_PERMITS_PER_SECOND");
+    /**
+     * @return requests per second the rate is never cut under.
+     */
+    public static double getMinQps() {
+        String env = System.getenv("MISTRAL_MIN_QPS");
         if (env != null && !env.isBlank()) try {
             return Double.parseDouble(env);
         } catch (Exception ignored) {
         }
-        return 0.12;
+        try (var is = MistralUtilities.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (is != null) {
+                var p = new java.util.Properties();
+                p.load(is);
+                String v = p.getProperty("MISTRAL_MIN_QPS");
+                if (v != null && !v.isBlank()) return Double.parseDouble(v);
+            }
+        } catch (Exception ignored) {
+        }
+        return 0.05;
     }
 
-    public static int getMax429Strikes() {
-        String env = System.getenv("MISTRAL_MAX_429_STRIKES");
+    /**
+     * @return requests per second the rate never grows over.
+     */
+    public static double getMaxQps() {
+        String env = System.getenv("MISTRAL_MAX_QPS");
         if (env != null && !env.isBlank()) try {
-            return Integer.parseInt(env);
+            return Double.parseDouble(env);
         } catch (Exception ignored) {
         }
-        return 3;
+        try (var is = MistralUtilities.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (is != null) {
+                var p = new java.util.Properties();
+                p.load(is);
+                String v = p.getProperty("MISTRAL_MAX_QPS");
+                if (v != null && !v.isBlank()) return Double.parseDouble(v);
+            }
+        } catch (Exception ignored) {
+        }
+        return 5.0;
     }
 
-    public static long getCooldownMs() {
-        String env = System.getenv("MISTRAL_COOLDOWN_MS");
+    /**
+     * @return requests per second added to the rate on each success.
+     */
+    public static double getQpsStep() {
+        String env = System.getenv("MISTRAL_QPS_STEP");
         if (env != null && !env.isBlank()) try {
-            return Long.parseLong(env);
+            return Double.parseDouble(env);
+        } catch (Exception ignored) {
+        }
+        try (var is = MistralUtilities.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (is != null) {
+                var p = new java.util.Properties();
+                p.load(is);
+                String v = p.getProperty("MISTRAL_QPS_STEP");
+                if (v != null && !v.isBlank()) return Double.parseDouble(v);
+            }
+        } catch (Exception ignored) {
+        }
+        return 0.05;
+    }
+
+    /**
+     * @return prompt tokens sent per minute at most, 0 for no limit.
+     */
+    public static double getPromptTokensPerMinute() {
+        String env = System.getenv("MISTRAL_PROMPT_TOKENS_PER_MINUTE");
+        if (env != null && !env.isBlank()) try {
+            return Double.parseDouble(env);
+        } catch (Exception ignored) {
+        }
+        try (var is = MistralUtilities.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (is != null) {
+                var p = new java.util.Properties();
+                p.load(is);
+                String v = p.getProperty("MISTRAL_PROMPT_TOKENS_PER_MINUTE");
+                if (v != null && !v.isBlank()) return Double.parseDouble(v);
+            }
+        } catch (Exception ignored) {
+        }
+        return 500_000;
+    }
+
+    /**
+     * @return completion tokens asked per minute at most, 0 for no limit.
+     */
+    public static double getCompletionTokensPerMinute() {
+        String env = System.getenv("MISTRAL_COMPLETION_TOKENS_PER_MINUTE");
+        if (env != null && !env.isBlank()) try {
+            return Double.parseDouble(env);
+        } catch (Exception ignored) {
+        }
+        try (var is = MistralUtilities.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (is != null) {
+                var p = new java.util.Properties();
+                p.load(is);
+                String v = p.getProperty("MISTRAL_COMPLETION_TOKENS_PER_MINUTE");
+                if (v != null && !v.isBlank()) return Double.parseDouble(v);
+            }
+        } catch (Exception ignored) {
+        }
+        return 500_000;
+    }
+
+    /**
+     * @return completion tokens of one answer to start with, before the responses correct it.
+     */
+    public static double getCompletionTokensPerLine() {
+        String env = System.getenv("MISTRAL_COMPLETION_TOKENS_PER_LINE");
+        if (env != null && !env.isBlank()) try {
+            return Double.parseDouble(env);
+        } catch (Exception ignored) {
+        }
+        try (var is = MistralUtilities.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (is != null) {
+                var p = new java.util.Properties();
+                p.load(is);
+                String v = p.getProperty("MISTRAL_COMPLETION_TOKENS_PER_LINE");
+                if (v != null && !v.isBlank()) return Double.parseDouble(v);
+            }
+        } catch (Exception ignored) {
+        }
+        return 12;
+    }
+
+    /**
+     * @return requests to Mistral in flight at once the concurrency can grow to.
+     */
+    public static int getMaxInFlight() {
+        String env = System.getenv("MISTRAL_MAX_IN_FLIGHT");
+        if (env != null && !env.isBlank()) try {
+            return Math.max(1, Integer.parseInt(env.trim()));
+        } catch (Exception ignored) {
+        }
+        try (var is = MistralUtilities.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (is != null) {
+                var p = new java.util.Properties();
+                p.load(is);
+                String v = p.getProperty("MISTRAL_MAX_IN_FLIGHT");
+                if (v != null && !v.isBlank()) return Math.max(1, Integer.parseInt(v.trim()));
+            }
+        } catch (Exception ignored) {
+        }
+        return 4;
+    }
+
+    /**
+     * @return tokens, prompt and expected completion, one batch request is packed up to.
+     */
+    public static int getMaxBatchTokens() {
+        String env = System.getenv("MISTRAL_MAX_BATCH_TOKENS");
+        if (env != null && !env.isBlank()) try {
+            return Math.max(1, Integer.parseInt(env.trim()));
+        } catch (Exception ignored) {
+        }
+        try (var is = MistralUtilities.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (is != null) {
+                var p = new java.util.Properties();
+                p.load(is);
+                String v = p.getProperty("MISTRAL_MAX_BATCH_TOKENS");
+                if (v != null && !v.isBlank()) return Math.max(1, Integer.parseInt(v.trim()));
+            }
+        } catch (Exception ignored) {
+        }
+        return 4000;
+    }
+
+    /**
+     * @return sentences sent in one batch request.
+     */
+    public static int getMaxBatchSize() {
+        String env = System.getenv("MISTRAL_MAX_BATCH_SIZE");
+        if (env != null && !env.isBlank()) try {
+            return Math.max(1, Integer.parseInt(env.trim()));
+        } catch (Exception ignored) {
+        }
+        try (var is = MistralUtilities.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (is != null) {
+                var p = new java.util.Properties();
+                p.load(is);
+                String v = p.getProperty("MISTRAL_MAX_BATCH_SIZE");
+                if (v != null && !v.isBlank()) return Math.max(1, Integer.parseInt(v.trim()));
+            }
         } catch (Exception ignored) {
         }
-        return 45_000L;
+        return 100;
     }
-}
\ No newline at end of file
+}
@@ -73,4 +73,25 @@ public class OllamaUtilities {
         }
         return val;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return prompts sent to Ollama at once, to match the {@code OLLAMA_NUM_PARALLEL} of the server.
+     */
+    public static int getMaxConcurrency() {
+        String env = System.getenv("OLLAMA_MAX_CONCURRENCY");
+        if (env != null && !env.isBlank()) try {
+            return Math.max(1, Integer.parseInt(env.trim()));
+        } catch (Exception ignored) {
+        }
+        try (var is = OllamaUtilities.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (is != null) {
+                var p = new Properties();
+                p.load(is);
+                String v = p.getProperty("OLLAMA_MAX_CONCURRENCY");
+                if (v != null && !v.isBlank()) return Math.max(1, Integer.parseInt(v.trim()));
+            }
+        } catch (Exception ignored) {
+        }
+        return 1;
+    }
+}
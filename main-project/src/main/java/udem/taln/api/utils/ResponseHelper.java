@@ -3,8 +3,12 @@ package udem.taln.api.utils;
 import udem.taln.ner.NER;
 
 import java.util.List;
+import java.util.regex.Pattern;
 
 public abstract class ResponseHelper {
+    private static final Pattern LABEL = Pattern.compile(
+            "\\b(PERSON|ORGANIZATION|ORGANISATION|LOCATION|LOC|ORG|GPE|PER|NONE)\\b", Pattern.CASE_INSENSITIVE);
+
     public static String extractBetweenDoubleBrackets(String s) {
         if (s == null) return null;
         int open1 = s.indexOf('[');
@@ -21,18 +25,40 @@ public abstract class ResponseHelper {
         return s.substring(open2 + 1, close2).trim();
     }
 
+    /**
+     * @return the first label word of the text, {@code null} if there is none.
+     */
+    public static String findLabel(String s) {
+        if (s == null) return null;
+        var m = LABEL.matcher(s);
+        return m.find() ? m.group(1) : null;
+    }
+
+    /**
+     * Takes the labels the prompts ask for, and their usual aliases. Unlike {@link NER#mapType(String)}, which is for
+     * spaCy labels, {@code ORGANIZATION} and {@code LOCATION} are types of their own.
+     *
+     * @return the type of the label, {@code null} if it is not one.
+     */
+    public static NER.TYPE toType(String label) {
+        if (label == null) return null;
+        return switch (label.replaceAll("[^A-Za-z]", "").toUpperCase()) {
+            case "PERSON", "PER" -> NER.TYPE.PERSON;
+            case "ORGANIZATION", "ORGANISATION", "ORG" -> NER.TYPE.ORGANIZATION;
+            case "LOCATION", "LOC", "GPE" -> NER.TYPE.LOCATION;
+            case "NONE" -> NER.TYPE.NONE;
+            default -> null;
+        };
+    }
+
+    /**
+     * @return the type answered, {@code null} when the response holds no label (empty, truncated...), so it is not
+     * cached.
+     */
     public static List<NER.TYPE> getTypes(String response) {
         String typeToken = ResponseHelper.extractBetweenDoubleBrackets(response);
-        if (typeToken == null || typeToken.isBlank()) {
-            typeToken = response.trim();
-        }
-        typeToken = typeToken
-                .replace("ANSWER", "")
-                .replace("answer", "")
-                .replaceAll("[^A-Za-z]", "")
-                .toUpperCase();
-
-        NER.TYPE mapped = NER.mapType(typeToken);
-        return List.of(mapped);
+        NER.TYPE type = typeToken == null ? null : toType(typeToken.replace("ANSWER", "").replace("answer", ""));
+        if (type == null) type = toType(findLabel(response));
+        return type == null ? null : List.of(type);
     }
 }
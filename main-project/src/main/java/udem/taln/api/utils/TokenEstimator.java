@@ -0,0 +1,69 @@
+package udem.taln.api.utils;
+
+/**
+ * Tokens of a request, guessed before sending it: the prompt from its length, the completion from the lines
+ * expected back. Each guess is corrected by the {@code usage} block of the responses (moving average of
+ * actual / estimated), so it follows the real tokenizer and the real answers.
+ */
+public final class TokenEstimator {
+    private static final double CHARS_PER_TOKEN = 4.0;
+    private static final double SMOOTHING = 0.2;
+
+    private double promptRatio = 1.0;
+    private double completionPerLine;
+
+    /**
+     * @param prompt      tokens of the prompt, estimated from its length and corrected.
+     * @param promptChars length of the prompt, to correct the estimate.
+     * @param completion  tokens of the completion.
+     * @param lines       answers expected in the completion.
+     */
+    public record Estimate(int prompt, int promptChars, int completion, int lines) {
+        public UsageLimiter.Usage usage() {
+            return new UsageLimiter.Usage(1, prompt, completion);
+        }
+    }
+
+    /**
+     * @param completionPerLine tokens of one answer line to start with.
+     */
+    public TokenEstimator(double completionPerLine) {
+        this.completionPerLine = Math.max(1, completionPerLine);
+    }
+
+    /**
+     * @param prompt text sent to the model.
+     * @param lines  answers expected back, one per sentence of a batch.
+     */
+    public synchronized Estimate estimate(String prompt, int lines) {
+        int chars = prompt == null ? 0 : prompt.length();
+        return new Estimate(promptTokens(prompt), chars, completionTokens(lines), Math.max(1, lines));
+    }
+
+    /**
+     * @return tokens of a text sent in a prompt, e.g. one sentence of a batch.
+     */
+    public synchronized int promptTokens(String text) {
+        return (int) Math.ceil((text == null ? 0 : text.length()) / CHARS_PER_TOKEN * promptRatio);
+    }
+
+    /**
+     * @return tokens of that many answer lines.
+     */
+    public synchronized int completionTokens(int lines) {
+        return (int) Math.ceil(Math.max(1, lines) * completionPerLine);
+    }
+
+    /**
+     * Corrects the next estimates with the usage reported for this one.
+     */
+    public synchronized void observe(Estimate estimate, int promptTokens, int completionTokens) {
+        if (promptTokens > 0 && estimate.promptChars() > 0) {
+            double ratio = promptTokens / (estimate.promptChars() / CHARS_PER_TOKEN);
+            promptRatio += SMOOTHING * (ratio - promptRatio);
+        }
+        if (completionTokens > 0) {
+            completionPerLine += SMOOTHING * ((double) completionTokens / estimate.lines() - completionPerLine);
+        }
+    }
+}
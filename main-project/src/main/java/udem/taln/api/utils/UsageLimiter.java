@@ -0,0 +1,91 @@
+package udem.taln.api.utils;
+
+/**
+ * Token buckets on requests, prompt tokens and completion tokens, reserved all at once.
+ * <p>
+ * A reservation takes its estimated usage from every bucket right away, going into debt if need be, and says how
+ * long to wait for the most indebted one to be paid back: calls queue in the order they reserve, nothing sleeps.
+ * Once the response is there, {@link #settle(Reservation, Usage)} swaps the estimate for the real usage.
+ */
+public final class UsageLimiter {
+    private static final int DIMENSIONS = 3;
+
+    /**
+     * Amounts per dimension, a rate or a capacity of 0 leaves the dimension unlimited.
+     */
+    public record Usage(double requests, double promptTokens, double completionTokens) {
+        private double get(int dimension) {
+            return switch (dimension) {
+                case 0 -> requests;
+                case 1 -> promptTokens;
+                default -> completionTokens;
+            };
+        }
+    }
+
+    /**
+     * @param delayNanos time to wait before sending.
+     */
+    public record Reservation(Usage usage, long delayNanos) {
+    }
+
+    private final Usage perSecond;
+    private final Usage capacity;
+    private final double[] balance = new double[DIMENSIONS];
+    private long last = System.nanoTime();
+
+    /**
+     * @param perSecond refill of each bucket.
+     * @param capacity  most each bucket holds, i.e. the burst allowed after an idle time. Buckets start full.
+     */
+    public UsageLimiter(Usage perSecond, Usage capacity) {
+        this.perSecond = perSecond;
+        this.capacity = capacity;
+        for (int d = 0; d < DIMENSIONS; d++) balance[d] = capacity.get(d);
+    }
+
+    /**
+     * Limits given per minute, as the API states them, each bucket holding one minute's worth.
+     */
+    public static UsageLimiter perMinute(double requestsPerSecond, double promptTokensPerMinute,
+                                         double completionTokensPerMinute) {
+        return new UsageLimiter(
+                new Usage(requestsPerSecond, promptTokensPerMinute / 60.0, completionTokensPerMinute / 60.0),
+                new Usage(Math.max(1, requestsPerSecond), promptTokensPerMinute, completionTokensPerMinute));
+    }
+
+    public synchronized Reservation reserve(Usage estimate) {
+        refill();
+        long delay = 0;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            if (!limited(d)) continue;
+            balance[d] -= estimate.get(d);
+            if (balance[d] < 0) delay = Math.max(delay, (long) (-balance[d] / perSecond.get(d) * 1e9));
+        }
+        return new Reservation(estimate, delay);
+    }
+
+    /**
+     * Gives back what was reserved over the actual usage, or takes what was missing.
+     */
+    public synchronized void settle(Reservation reservation, Usage actual) {
+        refill();
+        for (int d = 0; d < DIMENSIONS; d++) {
+            if (!limited(d)) continue;
+            balance[d] = Math.min(capacity.get(d), balance[d] + reservation.usage().get(d) - actual.get(d));
+        }
+    }
+
+    private boolean limited(int d) {
+        return perSecond.get(d) > 0 && capacity.get(d) > 0;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double seconds = (now - last) / 1e9;
+        last = now;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            if (limited(d)) balance[d] = Math.min(capacity.get(d), balance[d] + seconds * perSecond.get(d));
+        }
+    }
+}
@@ -1,14 +1,31 @@
 package udem.taln.ner;
 
-import udem.taln.wrapper.SpacyWrapperService;
+import udem.taln.wrapper.PipelineProfile;
+import udem.taln.wrapper.SpacyMicroBatcher;
+import udem.taln.wrapper.SpacyPoolManager;
+import udem.taln.wrapper.SpacyWorkerPool;
+import udem.taln.wrapper.bulk.SpacyBulkRunner;
+import udem.taln.wrapper.dto.NerDTO;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.utils.SpacyUtilities;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class NER {
-    private static final SpacyWrapperService wrapper = new SpacyWrapperService();
+    private static SpacyPoolManager wrapper = new SpacyPoolManager();
     private static volatile boolean initialized = false;
+    private static final Set<String> profiled = ConcurrentHashMap.newKeySet();
+    private static final int PROFILE_SAMPLE = 200;
+    private static final ExecutorService RUNS = Executors.newVirtualThreadPerTaskExecutor();
+    // By pool, so a pool created again after the previous one closed gets a batcher of its own
+    private static final Map<SpacyWorkerPool, SpacyMicroBatcher> batchers = new ConcurrentHashMap<>();
 
     // Remove static initialization and use lazy initialization instead
     private static synchronized void ensureInitialized() {
@@ -22,11 +39,51 @@ public class NER {
         }
     }
 
+    /**
+     * Runs the next calls on these pools (e.g. stubbed ones in tests), the current ones being closed.
+     */
+    static synchronized void usePools(SpacyPoolManager manager) {
+        wrapper.close();
+        wrapper = manager;
+        initialized = false;
+    }
+
     public enum MODE {
-        LG,
-        MD,
-        SM,
-        TRF,
+        LG("en_core_web_lg"),
+        MD("en_core_web_md"),
+        SM("en_core_web_sm"),
+        TRF("en_core_web_trf");
+
+        private final String model;
+
+        MODE(String model) {
+            this.model = model;
+        }
+
+        /**
+         * @return the name of the spaCy package of this mode.
+         */
+        public String model() {
+            return model;
+        }
+
+        /**
+         * @return the components loaded for this mode, see {@link SpacyUtilities#getPipelineProfile(String)}.
+         */
+        public PipelineProfile profile() {
+            return SpacyUtilities.getPipelineProfile(name());
+        }
+
+        /**
+         * @param model the name of a spaCy package, e.g. {@code en_core_web_lg}.
+         * @return the mode using this package.
+         */
+        public static MODE fromModel(String model) {
+            for (MODE mode : values()) {
+                if (mode.model.equals(model)) return mode;
+            }
+            throw new IllegalArgumentException("Unknown spaCy model: " + model);
+        }
     }
 
     public enum TYPE {
@@ -39,60 +96,213 @@ public class NER {
     public record PSentence(int id, List<TYPE> types) {
     }
 
+    /**
+     * Starts loading the models of the given modes in the background and returns right away,
+     * so they load while the caller reads and formats its text.
+     */
+    public static void prepare(MODE... modes) {
+        ensureInitialized();
+        // Every pool exists before any worker starts, so the first workers already share the cores with all of them
+        for (MODE mode : modes) wrapper.pool(mode.model(), mode.profile());
+        for (MODE mode : modes) {
+            wrapper.prewarm(mode.model(), mode.profile());
+        }
+    }
+
+    /**
+     * @return the memory of the workers of each model, see {@link SpacyPoolManager#memoryReport()}.
+     */
+    public static String memoryReport() {
+        return wrapper.memoryReport();
+    }
+
     public static List<PSentence> execute(MODE type, Map<Integer, Analyser.Pair> text) {
+        return join(executeAsync(type, text));
+    }
+
+    /**
+     * Same as {@link #execute(MODE, Map)} without blocking, so other work (e.g. an LLM run) can overlap with spaCy.
+     */
+    public static CompletableFuture<List<PSentence>> executeAsync(MODE type, Map<Integer, Analyser.Pair> text) {
+        return executeAsync(type, toItems(text));
+    }
+
+    /**
+     * Runs several models on the same text at once, each one on the workers of its own pool, so a comparison costs
+     * about the time of the slowest model rather than the sum of them. The items are built once and shared.
+     *
+     * @param modes the models to run.
+     * @param text  the formatted text.
+     * @return the predicted types of each model, in id order, ready for {@link Analyser#mcnemar(List, List)}.
+     */
+    public static Map<MODE, List<PSentence>> executeAll(Set<MODE> modes, Map<Integer, Analyser.Pair> text) {
+        List<NerItemDTO> items = toItems(text);
+        // Every pool starts loading its model before any of them gets work
+        if (!isBulk(items.size())) prepare(modes.toArray(MODE[]::new));
+        Map<MODE, CompletableFuture<List<PSentence>>> runs = new EnumMap<>(MODE.class);
+        for (MODE mode : modes) runs.put(mode, executeAsync(mode, items));
+        Map<MODE, List<PSentence>> result = new EnumMap<>(MODE.class);
+        for (var run : runs.entrySet()) result.put(run.getKey(), join(run.getValue()));
+        return result;
+    }
+
+    private static CompletableFuture<List<PSentence>> executeAsync(MODE mode, List<NerItemDTO> items) {
+        if (isBulk(items.size())) return CompletableFuture.supplyAsync(() -> executeBulk(mode, items), RUNS);
         ensureInitialized(); // Ensure wrapper is initialized before use
-        return switch (type) {
-            case LG -> executeLG(text);
-            case MD -> executeMD(text);
-            case SM -> executeSM(text);
-            case TRF -> new ArrayList<>();
-        };
+        return executeBatched(mode, items);
     }
 
-    private static List<PSentence> executeLG(Map<Integer, Analyser.Pair> text) {
-        List<PSentence> result = new ArrayList<>();
-        for (Map.Entry<Integer, Analyser.Pair> sentence : text.entrySet()) {
-//            System.out.println("[NER] LG -> calling Python for id=" + sentence.getKey());
-            var labels = wrapper.getLG(sentence.getValue().sentence, sentence.getValue().target).labels;
-//            System.out.println("[NER] LG <- received for id=" + sentence.getKey() + " labels=" + labels);
-            var psentence = new PSentence(sentence.getKey(), mapTypes(labels));
-            result.add(psentence);
+    private static boolean isBulk(int size) {
+        int bulkThreshold = SpacyUtilities.getBulkThreshold();
+        return bulkThreshold > 0 && size >= bulkThreshold;
+    }
+
+    /**
+     * Shards the text in chunks of at most {@link SpacyUtilities#getItemsPerCall(String)} sentences, small enough for
+     * every worker the pool of the model can grow to gets one. Each chunk is a single call processed by
+     * {@code nlp.pipe} on the Python side.
+     * For {@link MODE#TRF TRF}, sentences are bucketed by length first, so a transformer batch pads its sentences
+     * to a close length rather than to the longest sentence of the text.
+     * A text smaller than one {@code nlp.pipe} batch goes through the {@link SpacyMicroBatcher} of the model instead,
+     * and shares its call with those of the other threads executing at the same time.
+     *
+     * @param mode  the model to use, only workers having it loaded get the chunks.
+     * @param items the formatted text.
+     * @return the predicted types, in id order.
+     */
+    private static CompletableFuture<List<PSentence>> executeBatched(MODE mode, List<NerItemDTO> items) {
+        var pool = wrapper.pool(mode.model(), mode.profile());
+        if (SpacyUtilities.isProfileReport()) reportProfile(pool, items);
+        int batchSize = SpacyUtilities.getBatchSize(mode.name());
+        if (items.size() < batchSize && SpacyUtilities.getCoalesceWindowMs() > 0) {
+            return batcher(mode, pool, batchSize).submit(items).thenApplyAsync(results -> {
+                var result = toPSentences(items, results);
+                result.sort(Comparator.comparingInt(PSentence::id));
+                return result;
+            });
         }
-        return result;
+        int perShard = (items.size() + pool.getMaxWorkers() - 1) / pool.getMaxWorkers();
+        int perCall = Math.max(1, Math.min(SpacyUtilities.getItemsPerCall(mode.name()), perShard));
+
+        List<NerItemDTO> ordered = bucketed(mode, items);
+        List<CompletableFuture<List<PSentence>>> calls = new ArrayList<>();
+        for (int from = 0; from < ordered.size(); from += perCall) {
+            var chunk = ordered.subList(from, Math.min(ordered.size(), from + perCall));
+            calls.add(submit(pool, mode, chunk, batchSize));
+        }
+
+        return CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            List<PSentence> result = new ArrayList<>(items.size());
+            for (var c : calls) result.addAll(c.join());
+            result.sort(Comparator.comparingInt(PSentence::id));
+            return result;
+        });
     }
 
-    private static List<PSentence> executeMD(Map<Integer, Analyser.Pair> text) {
-        List<PSentence> result = new ArrayList<>();
+    private static SpacyMicroBatcher batcher(MODE mode, SpacyWorkerPool pool, int batchSize) {
+        batchers.keySet().removeIf(SpacyWorkerPool::isClosed);
+        return batchers.computeIfAbsent(pool,
+                p -> new SpacyMicroBatcher(p, batchSize, SpacyUtilities.getItemsPerCall(mode.name())));
+    }
+
+    private static List<NerItemDTO> toItems(Map<Integer, Analyser.Pair> text) {
+        List<NerItemDTO> items = new ArrayList<>(text.size());
         for (Map.Entry<Integer, Analyser.Pair> sentence : text.entrySet()) {
-//            System.out.println("[NER] MD -> calling Python for id=" + sentence.getKey());
-            var labels = wrapper.getMD(sentence.getValue().sentence, sentence.getValue().target).labels;
-//            System.out.println("[NER] MD <- received for id=" + sentence.getKey() + " labels=" + labels);
-            var psentence = new PSentence(sentence.getKey(), mapTypes(labels));
-            result.add(psentence);
+            items.add(new NerItemDTO(sentence.getKey(), sentence.getValue().sentence, sentence.getValue().target));
         }
-        return result;
+        return items;
     }
 
-    private static List<PSentence> executeSM(Map<Integer, Analyser.Pair> text) {
-        List<PSentence> result = new ArrayList<>();
-        for (Map.Entry<Integer, Analyser.Pair> sentence : text.entrySet()) {
-//            System.out.println("[NER] SM -> calling Python for id=" + sentence.getKey());
-            var labels = wrapper.getSM(sentence.getValue().sentence, sentence.getValue().target).labels;
-//            System.out.println("[NER] SM <- received for id=" + sentence.getKey() + " labels=" + labels);
-            var psentence = new PSentence(sentence.getKey(), mapTypes(labels));
-            result.add(psentence);
+    private static List<NerItemDTO> bucketed(MODE mode, List<NerItemDTO> items) {
+        if (mode != MODE.TRF) return items;
+        List<NerItemDTO> sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparingInt(item -> estimateTokens(item.sentence)));
+        return sorted;
+    }
+
+    /**
+     * Rough token count of a sentence, words and punctuation, enough to bucket sentences by length.
+     */
+    static int estimateTokens(String sentence) {
+        if (sentence == null) return 0;
+        int tokens = 0;
+        boolean inWord = false;
+        for (int i = 0; i < sentence.length(); i++) {
+            char c = sentence.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (!inWord) tokens++;
+                inWord = true;
+            } else {
+                if (!Character.isWhitespace(c)) tokens++;
+                inWord = false;
+            }
         }
-        return result;
+        return tokens;
     }
 
-//    private static List<PSentence> executeTRF(Map<Integer, String> text) {
-//        List<PSentence> result = new ArrayList<>();
-//        for (Map.Entry<Integer, String> sentence : text.entrySet()) {
-//            var psentence = new PSentence(sentence.getKey(), mapTypes(wrapper.getTRF(sentence.getValue()).labels));
-//            result.add(psentence);
-//        }
-//        return result;
-//    }
+    /**
+     * Processes the whole text in a single offline run, see {@link SpacyBulkRunner}.
+     * Used from {@link SpacyUtilities#getBulkThreshold()} sentences, where per call overhead adds up.
+     *
+     * @return the predicted types, in id order.
+     */
+    public static List<PSentence> executeBulk(MODE mode, Map<Integer, Analyser.Pair> text) {
+        return executeBulk(mode, toItems(text));
+    }
+
+    private static List<PSentence> executeBulk(MODE mode, List<NerItemDTO> all) {
+        List<NerItemDTO> items = bucketed(mode, all);
+        try {
+            var result = toPSentences(items, new SpacyBulkRunner().run(mode.model(), mode.profile(), items,
+                    SpacyUtilities.getBatchSize(mode.name())));
+            result.sort(Comparator.comparingInt(PSentence::id));
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static CompletableFuture<List<PSentence>> submit(SpacyWorkerPool pool, MODE mode, List<NerItemDTO> chunk,
+                                                             int batchSize) {
+        // Mapping happens off the worker, which can take its next chunk right away
+        return pool.submit(worker -> worker.getBatch(mode.model(), chunk, batchSize)).thenApplyAsync(results -> toPSentences(chunk, results));
+    }
+
+    /**
+     * Prints the time each component of the full pipeline takes on the first sentences, and what the profile saves.
+     * Only done once per model.
+     */
+    private static void reportProfile(SpacyWorkerPool pool, List<NerItemDTO> items) {
+        if (!profiled.add(pool.getModel())) return;
+        List<String> sample = items.stream().limit(PROFILE_SAMPLE).map(item -> item.sentence).toList();
+        if (sample.isEmpty()) return;
+        try {
+            System.out.println(pool.submit(worker -> worker.profileComponents(pool.getModel(), sample)).join());
+        } catch (CompletionException e) {
+            System.err.println("[NER] Pipeline profiling of " + pool.getModel() + " failed: " + e.getCause().getMessage());
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    /**
+     * Matches the wrapper results back to their items by id.
+     */
+    private static List<PSentence> toPSentences(List<NerItemDTO> items, List<NerDTO> results) {
+        Map<Integer, List<String>> byId = new HashMap<>(results.size());
+        for (NerDTO dto : results) byId.put(dto.id, dto.labels);
+        List<PSentence> out = new ArrayList<>(items.size());
+        for (NerItemDTO item : items) {
+            out.add(new PSentence(item.id, mapTypes(byId.getOrDefault(item.id, List.of()))));
+        }
+        return out;
+    }
 
     /**
      * Maps Spacy labels to NER types.
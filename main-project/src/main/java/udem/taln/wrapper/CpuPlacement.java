@@ -0,0 +1,41 @@
+package udem.taln.wrapper;
+
+import udem.taln.wrapper.utils.SpacyUtilities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Which cores each worker runs on. The first {@link SpacyUtilities#getReservedCores()} cores are left to the JVM,
+ * the others are split between worker slots, as many cores per slot as its worker has threads (see
+ * {@link SpacyPoolManager}), so workers running side by side never share a core as long as there are enough of them.
+ */
+final class CpuPlacement {
+
+    private CpuPlacement() {
+    }
+
+    /**
+     * @param threads threads of the worker, one core each.
+     * @return the cores of the worker slot with the current settings.
+     */
+    static List<Integer> forSlot(int slot, int threads) {
+        return coresFor(slot, threads, Runtime.getRuntime().availableProcessors(), SpacyUtilities.getReservedCores());
+    }
+
+    /**
+     * @param slot      the worker slot.
+     * @param perWorker cores given to each slot.
+     * @param cores     cores of the machine.
+     * @param reserved  first cores left to the JVM, ignored when nothing would remain for the workers.
+     * @return the ids of the cores of the slot, slots past the available cores wrapping around.
+     */
+    static List<Integer> coresFor(int slot, int perWorker, int cores, int reserved) {
+        int first = reserved < cores ? Math.max(0, reserved) : 0;
+        int usable = cores - first;
+        int count = Math.clamp(perWorker, 1, usable);
+        List<Integer> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) ids.add(first + (slot * count + i) % usable);
+        return ids;
+    }
+}
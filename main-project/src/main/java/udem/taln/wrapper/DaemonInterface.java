@@ -0,0 +1,24 @@
+package udem.taln.wrapper;
+
+/**
+ * Methods a persistent wrapper daemon serves on top of {@link WrapperInterface}, see {@link SpacyDaemonClient}.
+ */
+public interface DaemonInterface {
+    /**
+     * @param ttlMs time after which the lease expires unless renewed.
+     * @return the id of the lease, keeping the daemon alive while held.
+     */
+    String acquireLease(long ttlMs);
+
+    /**
+     * @return false if the lease is unknown, e.g. it already expired.
+     */
+    boolean renewLease(String lease, long ttlMs);
+
+    void releaseLease(String lease);
+
+    /**
+     * Blocks until the model is loaded, returns right away if it already is.
+     */
+    boolean loadModel(String model);
+}
@@ -0,0 +1,85 @@
+package udem.taln.wrapper;
+
+import udem.taln.wrapper.dto.EntityDTO;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entities of the last sentences run through each model, least recently used first out.
+ * Every target of a cached sentence is answered from its entity offsets, without calling Python again.
+ */
+public class EntityCache {
+    private final int capacity;
+    private final Map<Key, List<EntityDTO>> entries;
+    private long hits;
+    private long misses;
+
+    private record Key(String model, String sentence) {
+    }
+
+    /**
+     * @param capacity sentences kept, all models together, 0 to keep none.
+     */
+    public EntityCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<EntityDTO>> eldest) {
+                return size() > EntityCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the entities of the sentence, {@code null} when it is not cached.
+     */
+    public synchronized List<EntityDTO> get(String model, String sentence) {
+        var ents = entries.get(new Key(model, sentence));
+        if (ents == null) misses++;
+        else hits++;
+        return ents;
+    }
+
+    public synchronized void put(String model, String sentence, List<EntityDTO> ents) {
+        if (capacity == 0) return;
+        entries.put(new Key(model, sentence), List.copyOf(ents));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Labels of the entities spanning exactly the target, as {@code EndPoint._extract_labels} does with
+     * {@code ent.text == target.strip()}. All of them without a target.
+     *
+     * @param ents entities of the sentence, offsets in code points.
+     */
+    public static List<String> labelsFor(String sentence, List<EntityDTO> ents, String target) {
+        List<String> labels = new ArrayList<>(ents.size());
+        if (target == null || target.isEmpty()) {
+            for (var e : ents) labels.add(e.label);
+            return labels;
+        }
+        String t = target.strip();
+        int codePoints = sentence.codePointCount(0, sentence.length());
+        for (var e : ents) {
+            if (e.start < 0 || e.end > codePoints || e.start > e.end) continue;
+            int from = sentence.offsetByCodePoints(0, e.start);
+            int to = sentence.offsetByCodePoints(from, e.end - e.start);
+            if (to - from == t.length() && sentence.startsWith(t, from)) labels.add(e.label);
+        }
+        return labels;
+    }
+}
@@ -1,10 +1,43 @@
 package udem.taln.wrapper;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Object called by Python to report its readiness: first its registration, then each model it finished loading.
+ */
 public class EntryPoint {
     private volatile WrapperInterface py;
+    private volatile int pid = -1;
+    private volatile CompletableFuture<WrapperInterface> registered = new CompletableFuture<>();
+    private final Map<String, CompletableFuture<Void>> models = new ConcurrentHashMap<>();
 
-    public void registerPythonObject(WrapperInterface obj) {
+    public synchronized void registerPythonObject(WrapperInterface obj) {
         this.py = obj;
+        registered.complete(obj);
+    }
+
+    public void notifyModelLoaded(String model) {
+        modelLoaded(model).complete(null);
+    }
+
+    public void notifyModelFailed(String model, String error) {
+        modelLoaded(model).completeExceptionally(new IllegalStateException("Python failed to load " + model + ": " + error));
+    }
+
+    /**
+     * Called by Python once registered, so its memory can be sampled even when Java did not launch it (forked worker).
+     */
+    public void notifyPid(int pid) {
+        this.pid = pid;
+    }
+
+    /**
+     * @return the pid of the registered Python process, -1 if unknown.
+     */
+    public int pid() {
+        return pid;
     }
 
     public boolean isPythonRegistered() {
@@ -14,4 +47,28 @@ public class EntryPoint {
     public WrapperInterface yf() {
         return py;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return completed as soon as Python registered its object.
+     */
+    public CompletableFuture<WrapperInterface> registered() {
+        return registered;
+    }
+
+    /**
+     * Forgets the registration and the loaded models, before a new Python process takes over the port pair.
+     */
+    public synchronized void reset() {
+        py = null;
+        pid = -1;
+        registered = new CompletableFuture<>();
+        models.clear();
+    }
+
+    /**
+     * @return completed as soon as Python reports the model as loaded.
+     */
+    public CompletableFuture<Void> modelLoaded(String model) {
+        return models.computeIfAbsent(model, m -> new CompletableFuture<>());
+    }
+}
@@ -0,0 +1,31 @@
+package udem.taln.wrapper;
+
+import java.util.List;
+
+/**
+ * Which components of a spaCy package are loaded, given to {@code spacy.load(..., exclude=...)}.
+ */
+public enum PipelineProfile {
+    /**
+     * Every component of the package.
+     */
+    FULL(List.of()),
+    /**
+     * Only what {@code doc.ents} needs. The ner of en_core_web_sm/md/lg has its own tok2vec, and the one of
+     * en_core_web_trf listens to the transformer, which is not excluded.
+     */
+    NER_ONLY(List.of("tok2vec", "tagger", "parser", "attribute_ruler", "lemmatizer", "senter"));
+
+    private final List<String> exclude;
+
+    PipelineProfile(List<String> exclude) {
+        this.exclude = exclude;
+    }
+
+    /**
+     * @return the components not loaded with this profile.
+     */
+    public List<String> exclude() {
+        return exclude;
+    }
+}
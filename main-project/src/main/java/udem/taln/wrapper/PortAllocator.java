@@ -0,0 +1,67 @@
+package udem.taln.wrapper;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Hands out worker slots, slot {@code i} owning the port pair {@code base + 2i} (gateway) and {@code base + 2i + 1}
+ * (Python callback). Slots are reused once released, so ports stay in a small and predictable range.
+ * <p>
+ * A slot whose ports are taken on this host (another JVM, a leftover Python process) is skipped, it is tried again
+ * on the next acquire.
+ */
+class PortAllocator {
+    private static final int MAX_PORT = 65535;
+
+    private final int basePort;
+    private final IntPredicate free;
+    private final BitSet used = new BitSet();
+
+    PortAllocator(int basePort) {
+        this(basePort, PortAllocator::canBind);
+    }
+
+    /**
+     * @param free whether a port can be handed out, e.g. always for stub workers binding none.
+     */
+    PortAllocator(int basePort, IntPredicate free) {
+        this.basePort = basePort;
+        this.free = free;
+    }
+
+    synchronized int acquire() {
+        for (int slot = used.nextClearBit(0); pythonPort(slot) <= MAX_PORT; slot = used.nextClearBit(slot + 1)) {
+            if (free.test(javaPort(slot)) && free.test(pythonPort(slot))) {
+                used.set(slot);
+                return slot;
+            }
+        }
+        throw new IllegalStateException("No free port pair from " + basePort);
+    }
+
+    synchronized void release(int slot) {
+        used.clear(slot);
+    }
+
+    int javaPort(int slot) {
+        return basePort + 2 * slot;
+    }
+
+    int pythonPort(int slot) {
+        return basePort + 2 * slot + 1;
+    }
+
+    /**
+     * @return whether the port is free on the loopback interface, where the gateway and Python listen.
+     */
+    private static boolean canBind(int port) {
+        try (var ignored = new ServerSocket(port, 1, InetAddress.getLoopbackAddress())) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
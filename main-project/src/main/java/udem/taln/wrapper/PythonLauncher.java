@@ -1,34 +1,118 @@
 package udem.taln.wrapper;
 
+import udem.taln.wrapper.utils.SpacyUtilities;
+
 import java.io.File;
 import java.io.IOException;
-import java.time.Duration;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
-public class PythonLauncher {
+public class PythonLauncher implements PythonProcess {
     private final String PYTHON_CMD;
     private final File SCRIPT_FILE;
+    private final List<String> SCRIPT_ARGS;
+    // Native thread pools (OpenMP, MKL, BLAS) read their size from these at import time
+    private static final List<String> THREAD_VARS = List.of(
+            "OMP_NUM_THREADS", "MKL_NUM_THREADS", "OPENBLAS_NUM_THREADS", "VECLIB_MAXIMUM_THREADS", "NUMEXPR_NUM_THREADS");
+    private static final String TASKSET = findTaskset();
+    private static final String TRANSFORMER_MODEL = "en_core_web_trf";
+    private int threads;
+    private Consumer<String> output;
+    private File log;
+    private List<Integer> cpus = List.of();
     private Process process;
 
     public PythonLauncher(String pythonCmd, File scriptFile) {
+        this(pythonCmd, scriptFile, List.of());
+    }
+
+    /**
+     * @param scriptArgs arguments given to the script, after its path.
+     */
+    public PythonLauncher(String pythonCmd, File scriptFile, List<String> scriptArgs) {
         this.PYTHON_CMD = pythonCmd;
         this.SCRIPT_FILE = scriptFile;
+        this.SCRIPT_ARGS = List.copyOf(scriptArgs);
+    }
+
+    /**
+     * @param models models the process may load, all of them if empty.
+     * @return the {@code --torch-threads} arguments of {@code EndPoint.py}, only when the process may load the
+     * transformer model: no other model runs on torch, and the flag makes Python import it.
+     */
+    static List<String> torchArgs(List<String> models) {
+        return torchArgs(models, SpacyUtilities.getTorchThreads());
+    }
+
+    /**
+     * @param threads intra-op threads of torch.
+     */
+    static List<String> torchArgs(List<String> models, int threads) {
+        if (!models.isEmpty() && !models.contains(TRANSFORMER_MODEL)) return List.of();
+        return List.of("--torch-threads", String.valueOf(threads));
     }
 
     public PythonLauncher() {
+        this(List.of());
+    }
+
+    public PythonLauncher(List<String> scriptArgs) {
+        this(defaultPythonCmd(), defaultScriptFile(), scriptArgs);
+    }
+
+    /**
+     * @param threads size of the native thread pools of the process, left to the libraries if 0.
+     */
+    public synchronized PythonLauncher setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param output gets each line the process prints (output and errors), instead of the console.
+     */
+    public synchronized PythonLauncher setOutput(Consumer<String> output) {
+        this.output = output;
+        return this;
+    }
+
+    /**
+     * @param log file the output (and errors) of the process are appended to instead of the console, so it does not
+     *            depend on the streams of this JVM, e.g. for a process outliving it.
+     */
+    public synchronized PythonLauncher setLog(File log) {
+        this.log = log;
+        return this;
+    }
+
+    /**
+     * @param cpus cores the process is pinned to with {@code taskset} (Linux only), not pinned if empty.
+     */
+    @Override
+    public synchronized PythonLauncher setCpus(List<Integer> cpus) {
+        this.cpus = List.copyOf(cpus);
+        return this;
+    }
+
+    public static String defaultPythonCmd() {
         String os = System.getProperty("os.name").toLowerCase();
-        String defaultCmd;
         if (os.contains("win")) {
-            defaultCmd = "spacy-wrapper/.venv/Scripts/python.exe";
-        } else {
-            defaultCmd = "spacy-wrapper/.venv/bin/python";
+            return "spacy-wrapper/.venv/Scripts/python.exe";
         }
-        this.PYTHON_CMD = defaultCmd;
-        this.SCRIPT_FILE = new File("spacy-wrapper/wrapper/EndPoint.py");
+        return "spacy-wrapper/.venv/bin/python";
     }
 
+    public static File defaultScriptFile() {
+        return new File("spacy-wrapper/wrapper/EndPoint.py");
+    }
+
+    @Override
     public synchronized void start() throws IOException {
         if (process != null && process.isAlive()) return;
 
@@ -38,46 +122,73 @@ public class PythonLauncher {
 
         // Run unbuffered (-u) so we see Python prints and errors immediately
         List<String> cmd = new ArrayList<>();
+        if (!cpus.isEmpty() && TASKSET != null) {
+            cmd.add(TASKSET);
+            cmd.add("-c");
+            cmd.add(cpus.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        }
         cmd.add(PYTHON_CMD);
         cmd.add("-u");
         cmd.add(SCRIPT_FILE.getAbsolutePath());
+        cmd.addAll(SCRIPT_ARGS);
 
         System.out.println("[PythonLauncher] Starting: " + String.join(" ", cmd));
 
         ProcessBuilder pb = new ProcessBuilder(cmd);
         // Make sure output is visible in the same console
         pb.redirectErrorStream(true);
-        pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        if (output != null) pb.redirectOutput(ProcessBuilder.Redirect.PIPE);
+        else if (log != null) pb.redirectOutput(ProcessBuilder.Redirect.appendTo(log));
+        else pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
         // Ensure unbuffered in case -u is ignored by certain launchers
         pb.environment().put("PYTHONUNBUFFERED", "1");
+        if (threads > 0) {
+            for (String var : THREAD_VARS) pb.environment().put(var, String.valueOf(threads));
+        }
 
         process = pb.start();
-
-        // Fail fast if Python died immediately (missing deps, import error, etc.)
-        try {
-            TimeUnit.SECONDS.sleep(1);
-        } catch (InterruptedException ignored) {}
-        if (!process.isAlive()) {
-            int code;
-            try {
-                code = process.exitValue();
-            } catch (IllegalThreadStateException e) {
-                code = -1;
-            }
-            throw new IOException("Python process exited immediately with code " + code + ". Check console output above for errors.");
+        if (output != null) {
+            var lines = process.inputReader(StandardCharsets.UTF_8);
+            var consumer = output;
+            Thread.ofVirtual().name("python-output").start(() -> {
+                try (lines) {
+                    lines.lines().forEach(consumer);
+                } catch (IOException | UncheckedIOException ignored) {
+                    // Process gone
+                }
+            });
         }
     }
 
     /**
-     * Attend que le process Python s’initialise (facultatif).
+     * @return completed with the exit code when the Python process exits, so callers waiting for it can fail fast
+     * (missing deps, import error, etc.) instead of waiting for a timeout.
      */
-    public void waitUntilReady(Duration timeout) {
-        try {
-            TimeUnit.MILLISECONDS.sleep(Math.min(timeout.toMillis(), 1200));
-        } catch (InterruptedException ignored) {
-        }
+    @Override
+    public synchronized CompletableFuture<Integer> onExit() {
+        if (process == null) return CompletableFuture.failedFuture(new IllegalStateException("Python not started"));
+        return process.onExit().thenApply(Process::exitValue);
     }
 
+    /**
+     * @return the pid of the Python process.
+     */
+    public synchronized long pid() {
+        if (process == null) throw new IllegalStateException("Python not started");
+        return process.pid();
+    }
+
+    /**
+     * Writes a line to the standard input of the process.
+     */
+    public synchronized void send(String line) throws IOException {
+        if (process == null || !process.isAlive()) throw new IOException("Python not running");
+        var in = process.getOutputStream();
+        in.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        in.flush();
+    }
+
+    @Override
     public synchronized void stop() {
         if (process != null) {
             process.destroy();
@@ -89,7 +200,19 @@ public class PythonLauncher {
         }
     }
 
+    @Override
     public boolean isAlive() {
         return process != null && process.isAlive();
     }
+
+    private static String findTaskset() {
+        if (!System.getProperty("os.name").toLowerCase().contains("linux")) return null;
+        String path = System.getenv("PATH");
+        if (path == null) return null;
+        for (String dir : path.split(File.pathSeparator)) {
+            File taskset = new File(dir, "taskset");
+            if (taskset.canExecute()) return taskset.getAbsolutePath();
+        }
+        return null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package udem.taln.wrapper;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The Python side of a {@link SpacyWrapperService}: its own process ({@link PythonLauncher}), or a child forked by a
+ * {@link SpacyForkParent}.
+ */
+interface PythonProcess {
+    void start() throws IOException;
+
+    /**
+     * @param cpus cores the process is pinned to, not pinned if empty. Only taken into account by the next start.
+     */
+    PythonProcess setCpus(List<Integer> cpus);
+
+    /**
+     * @return completed with the exit code when the process exits, so callers waiting for it can fail fast.
+     */
+    CompletableFuture<Integer> onExit();
+
+    void stop();
+
+    boolean isAlive();
+}
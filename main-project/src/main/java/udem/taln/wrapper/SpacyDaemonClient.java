@@ -0,0 +1,343 @@
+package udem.taln.wrapper;
+
+import py4j.ClientServer;
+import udem.taln.wrapper.dto.DaemonDTO;
+import udem.taln.wrapper.parsers.WrapperParsers;
+import udem.taln.wrapper.transport.Py4JTransport;
+import udem.taln.wrapper.transport.SpacyTransport;
+import udem.taln.wrapper.transport.UnixSocketTransport;
+import udem.taln.wrapper.utils.SpacyUtilities;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Connection to a persistent wrapper daemon ({@code EndPoint.py --daemon}), which serves Py4J itself and outlives the
+ * JVM, so a series of runs only loads its models once.
+ * <p>
+ * Daemons announce themselves in {@link SpacyUtilities#getDaemonRegistry()}. Attaching reuses a running daemon
+ * serving the same models with the same excluded components, and only launches one when there is none.
+ * While attached, the client holds a lease renewed in the background; the daemon exits once it has had no lease for
+ * {@link SpacyUtilities#getDaemonIdleTimeoutMs()}, so a crashed JVM never keeps it alive.
+ * <p>
+ * The registry is only readable by its owner, and each entry carries the Py4J auth token of its daemon: other users
+ * can neither attach to a daemon nor point this JVM at a process of theirs.
+ */
+public class SpacyDaemonClient implements AutoCloseable {
+    // A daemon serves a single worker of this JVM, several workers of a model each get their own process
+    private static final Set<Integer> ATTACHED = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService RENEWALS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "spacy-lease");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final ExecutorService LOADS = Executors.newVirtualThreadPerTaskExecutor();
+    private static final long POLL_MS = 100;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    private final List<String> models;
+    private final PipelineProfile profile;
+    private final SpacyTransport.Kind transportKind;
+    private final Path registry;
+    private final long leaseTtlMs;
+    private final Function<DaemonDTO, Connection> connector;
+    private Connection connection;
+    private WrapperInterface wrapper;
+    private DaemonInterface control;
+    private SpacyTransport transport;
+    private int port = -1;
+    private long pid = -1;
+    private String lease;
+    private ScheduledFuture<?> renewal;
+
+    /**
+     * @param models  the models the daemon serves (and preloads).
+     * @param profile the components loaded for every model.
+     */
+    public SpacyDaemonClient(List<String> models, PipelineProfile profile, SpacyTransport.Kind transportKind) {
+        this(models, profile, transportKind, SpacyUtilities.getDaemonRegistry(), SpacyUtilities.getDaemonLeaseTtlMs(),
+                SpacyDaemonClient::connect);
+    }
+
+    /**
+     * @param connector opens the connection to a daemon of the registry, e.g. to stubs in tests.
+     */
+    SpacyDaemonClient(List<String> models, PipelineProfile profile, SpacyTransport.Kind transportKind, Path registry,
+                      long leaseTtlMs, Function<DaemonDTO, Connection> connector) {
+        this.models = List.copyOf(models);
+        this.profile = profile;
+        this.transportKind = transportKind;
+        this.registry = registry;
+        this.leaseTtlMs = leaseTtlMs;
+        this.connector = connector;
+    }
+
+    /**
+     * Connection to a daemon.
+     *
+     * @param entry its entry point, implementing {@link WrapperInterface} and {@link DaemonInterface}.
+     * @param close disconnects, the daemon keeps running.
+     */
+    record Connection(Object entry, Runnable close) {
+    }
+
+    /**
+     * Attaches to a running daemon serving the models, or launches one and waits until it announced itself.
+     */
+    public synchronized void attach() {
+        if (lease != null) return;
+        for (var daemon : find()) {
+            if (tryAttach(daemon)) return;
+        }
+        launch();
+    }
+
+    private void launch() {
+        List<String> args = new ArrayList<>(List.of(
+                "--daemon",
+                "--registry", registry.toAbsolutePath().toString(),
+                "--idle-timeout-ms", String.valueOf(SpacyUtilities.getDaemonIdleTimeoutMs()),
+                "--max-rss-mb", String.valueOf(SpacyUtilities.getMaxResidentMb())));
+        args.addAll(PythonLauncher.torchArgs(models));
+        if (!models.isEmpty()) {
+            args.addAll(List.of("--models", String.join(",", models), "--preload", String.join(",", models)));
+        }
+        if (!profile.exclude().isEmpty()) args.addAll(List.of("--exclude", String.join(",", profile.exclude())));
+        if (transportKind == SpacyTransport.Kind.UDS) {
+            // In the registry, out of reach of other users like the rest of the daemon
+            Path socket = registry.resolve("daemon-" + UUID.randomUUID() + ".sock");
+            args.addAll(List.of("--uds", socket.toAbsolutePath().toString()));
+        }
+        // Never stopped from here: the daemon outlives this JVM and stops on its own once idle
+        // Not pinned, a daemon outlives the slot layout of the JVM that launched it
+        Path log = registry.resolve("daemons.log");
+        var python = new PythonLauncher(args).setThreads(SpacyUtilities.getTorchThreads()).setLog(log.toFile());
+        try {
+            secureRegistry(registry);
+            python.start();
+            System.out.println("[SpacyDaemonClient] Daemon output goes to " + log.toAbsolutePath());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to launch a spaCy daemon", e);
+        }
+        long pid = python.pid();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SpacyUtilities.getRegistrationTimeoutMs());
+        while (System.nanoTime() < deadline) {
+            for (var daemon : find()) {
+                if (daemon.pid == pid && tryAttach(daemon)) return;
+            }
+            if (!python.isAlive()) {
+                // Another JVM may have launched the same daemon at the same time, and won
+                for (var daemon : find()) {
+                    if (tryAttach(daemon)) return;
+                }
+                throw new IllegalStateException("spaCy daemon exited before announcing itself. Check " + log.toAbsolutePath() + " for errors.");
+            }
+            try {
+                Thread.sleep(POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                python.stop();
+                throw new RuntimeException("Interrupted while waiting for the spaCy daemon", e);
+            }
+        }
+        python.stop();
+        throw new RuntimeException("spaCy daemon did not announce itself within " + SpacyUtilities.getRegistrationTimeoutMs() + " ms");
+    }
+
+    /**
+     * @return the daemons of the registry serving the same models and profile, entries of dead processes removed.
+     */
+    private List<DaemonDTO> find() {
+        List<DaemonDTO> found = new ArrayList<>();
+        if (!Files.isDirectory(registry)) return found;
+        try {
+            secureRegistry(registry);
+        } catch (IOException e) {
+            System.err.println("[SpacyDaemonClient] Ignoring the daemon registry " + registry + ": " + e.getMessage());
+            return found;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(registry, "*.json")) {
+            for (Path entry : entries) {
+                DaemonDTO daemon;
+                try {
+                    daemon = WrapperParsers.parseDaemon(Files.readString(entry));
+                } catch (IOException | RuntimeException e) {
+                    continue; // being written, or not ours
+                }
+                if (daemon.authToken == null || daemon.authToken.isBlank()) continue;
+                if (ProcessHandle.of(daemon.pid).map(ProcessHandle::isAlive).orElse(false)) {
+                    if (serves(daemon)) found.add(daemon);
+                } else {
+                    Files.deleteIfExists(entry);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[SpacyDaemonClient] Could not read the daemon registry " + registry + ": " + e.getMessage());
+        }
+        return found;
+    }
+
+    /**
+     * Creates the registry readable by its owner only, and refuses one of another user, whose entries could point
+     * this JVM at any process.
+     */
+    static void secureRegistry(Path registry) throws IOException {
+        if (!registry.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(registry);
+            return;
+        }
+        if (!Files.isDirectory(registry)) {
+            Files.createDirectories(registry, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        }
+        String owner = Files.getOwner(registry).getName();
+        if (!owner.equals(System.getProperty("user.name"))) {
+            throw new IOException("owned by " + owner + ", not by " + System.getProperty("user.name"));
+        }
+        // Also when created by an older version, or with a umask taking bits out
+        Files.setPosixFilePermissions(registry, OWNER_ONLY);
+    }
+
+    private boolean serves(DaemonDTO daemon) {
+        return new HashSet<>(daemon.models).equals(new HashSet<>(models))
+                && new HashSet<>(daemon.exclude).equals(new HashSet<>(profile.exclude()));
+    }
+
+    private static Connection connect(DaemonDTO daemon) {
+        var client = new ClientServer.ClientServerBuilder()
+                .pythonPort(daemon.port)
+                .pythonAddress(InetAddress.getLoopbackAddress())
+                .authToken(daemon.authToken)
+                .autoStartJavaServer(false)
+                .build();
+        try {
+            return new Connection(client.getPythonServerEntryPoint(
+                    new Class<?>[]{WrapperInterface.class, DaemonInterface.class}), client::shutdown);
+        } catch (RuntimeException e) {
+            client.shutdown();
+            throw e;
+        }
+    }
+
+    private boolean tryAttach(DaemonDTO daemon) {
+        if (!ATTACHED.add(daemon.port)) return false;
+        Connection candidate = null;
+        DaemonInterface daemonControl = null;
+        try {
+            candidate = connector.apply(daemon);
+            daemonControl = (DaemonInterface) candidate.entry();
+            lease = daemonControl.acquireLease(leaseTtlMs);
+            wrapper = (WrapperInterface) candidate.entry();
+            connection = candidate;
+            control = daemonControl;
+            port = daemon.port;
+            pid = daemon.pid;
+            transport = transportKind == SpacyTransport.Kind.UDS && daemon.uds != null && !daemon.uds.isBlank()
+                    ? new UnixSocketTransport(Path.of(daemon.uds))
+                    : new Py4JTransport(() -> wrapper);
+            renewal = RENEWALS.scheduleWithFixedDelay(this::renew, leaseTtlMs / 3, leaseTtlMs / 3, TimeUnit.MILLISECONDS);
+            System.out.println("[SpacyDaemonClient] Attached to the " + String.join(",", models) + " daemon on port "
+                    + daemon.port + " (pid " + daemon.pid + ")");
+            return true;
+        } catch (RuntimeException e) {
+            // The lease would keep a daemon alive that this JVM does not use
+            if (lease != null) {
+                try {
+                    daemonControl.releaseLease(lease);
+                } catch (RuntimeException ignored) {
+                }
+            }
+            if (candidate != null) candidate.close().run();
+            ATTACHED.remove(daemon.port);
+            lease = null;
+            wrapper = null;
+            connection = null;
+            control = null;
+            port = -1;
+            pid = -1;
+            return false;
+        }
+    }
+
+    private synchronized void renew() {
+        if (lease == null) return;
+        try {
+            if (!control.renewLease(lease, leaseTtlMs)) {
+                lease = control.acquireLease(leaseTtlMs);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[SpacyDaemonClient] Could not renew the lease on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Blocks until the daemon has the model loaded.
+     */
+    public void awaitModel(String model, long timeoutMs) {
+        var control = requiredControl();
+        try {
+            CompletableFuture.supplyAsync(() -> control.loadModel(model), LOADS)
+                    .get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Daemon did not load " + model + " within " + timeoutMs + " ms");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Daemon failed to load " + model, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the daemon to load " + model, e);
+        }
+    }
+
+    private synchronized DaemonInterface requiredControl() {
+        if (control == null) throw new IllegalStateException("Not attached to a spaCy daemon");
+        return control;
+    }
+
+    /**
+     * @return the pid of the daemon, empty while not attached.
+     */
+    public synchronized OptionalLong pid() {
+        return pid > 0 ? OptionalLong.of(pid) : OptionalLong.empty();
+    }
+
+    public synchronized WrapperInterface wrapper() {
+        if (wrapper == null) throw new IllegalStateException("Not attached to a spaCy daemon");
+        return wrapper;
+    }
+
+    public synchronized SpacyTransport transport() {
+        if (transport == null) throw new IllegalStateException("Not attached to a spaCy daemon");
+        return transport;
+    }
+
+    /**
+     * Releases the lease and disconnects, the daemon keeps running for the next runs.
+     */
+    @Override
+    public synchronized void close() {
+        if (renewal != null) renewal.cancel(false);
+        if (lease != null) {
+            try {
+                control.releaseLease(lease);
+            } catch (RuntimeException ignored) {
+            }
+        }
+        if (transport != null) transport.close();
+        if (connection != null) connection.close().run();
+        if (port >= 0) ATTACHED.remove(port);
+        lease = null;
+        connection = null;
+        wrapper = null;
+        control = null;
+        transport = null;
+        port = -1;
+        pid = -1;
+    }
+}
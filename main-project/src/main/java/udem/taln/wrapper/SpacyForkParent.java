@@ -0,0 +1,166 @@
+package udem.taln.wrapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * A Python parent process ({@code EndPoint.py --fork-parent}) that loads a model once, then forks a child per worker.
+ * Children share the model pages with the parent copy-on-write, so a node fits many more workers of a large model
+ * (e.g. the vectors of {@code en_core_web_lg}) in the same RAM.
+ * <p>
+ * Each child registers with its own gateway like any worker. Commands go through the standard input of the parent:
+ * {@code fork <javaPort> <pythonPort> <socket|-> <cpus|->} and {@code stop <javaPort>}. The parent answers on its
+ * output with {@code forked <javaPort> <pid>} and, once a child is gone, {@code exited <javaPort> <pid> <code>}.
+ * The children exit with the parent.
+ */
+class SpacyForkParent implements AutoCloseable {
+    private final String model;
+    private final PythonLauncher python;
+    // Current child of each java port, a recycled worker forks a new one on the same port
+    private final Map<Integer, Child> children = new ConcurrentHashMap<>();
+    private boolean started;
+
+    private static final class Child {
+        final CompletableFuture<Integer> exit = new CompletableFuture<>();
+        volatile long pid = -1;
+    }
+
+    /**
+     * @param model   the model loaded by the parent, before any fork.
+     * @param profile the components to load.
+     * @param threads threads of each child.
+     */
+    SpacyForkParent(String model, PipelineProfile profile, int threads) {
+        this(model, new PythonLauncher(args(model, profile, threads)).setThreads(threads));
+    }
+
+    /**
+     * @param python the parent process, its output going to {@link #onOutput(String)}.
+     */
+    SpacyForkParent(String model, PythonLauncher python) {
+        this.model = model;
+        // The children inherit the thread settings, each one is pinned on its own when forked
+        this.python = python.setOutput(this::onOutput);
+    }
+
+    private static List<String> args(String model, PipelineProfile profile, int threads) {
+        List<String> args = new ArrayList<>(List.of("--fork-parent", "--models", model));
+        // The flag imports torch, which only the transformer needs: the others must not carry it across fork()
+        args.addAll(PythonLauncher.torchArgs(List.of(model), threads));
+        if (!profile.exclude().isEmpty()) args.addAll(List.of("--exclude", String.join(",", profile.exclude())));
+        return args;
+    }
+
+    /**
+     * Launches the parent if needed. Fork commands sent while it loads the model are run once it is loaded.
+     */
+    synchronized void start() throws IOException {
+        if (started && python.isAlive()) return;
+        python.start();
+        started = true;
+        // Children exit with their parent
+        python.onExit().thenAccept(code -> children.values().forEach(child -> child.exit.complete(code)));
+        System.out.println("[SpacyForkParent] Started the " + model + " parent (pid " + python.pid() + ")");
+    }
+
+    /**
+     * Takes the control lines of the parent, and prints the others.
+     */
+    void onOutput(String line) {
+        String[] parts = line.split(" ");
+        try {
+            if (parts.length == 3 && parts[0].equals("forked")) {
+                var child = children.get(Integer.parseInt(parts[1]));
+                if (child != null) child.pid = Long.parseLong(parts[2]);
+                return;
+            }
+            if (parts.length == 4 && parts[0].equals("exited")) {
+                int port = Integer.parseInt(parts[1]);
+                var child = children.get(port);
+                // An older child of the port, stopped before this one was forked, is already forgotten
+                if (child != null && child.pid == Long.parseLong(parts[2])) {
+                    children.remove(port, child);
+                    child.exit.complete(Integer.parseInt(parts[3]));
+                }
+                return;
+            }
+        } catch (NumberFormatException ignored) {
+            // Not a control line
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * @param socket Unix socket the child serves batches on, or null.
+     * @return a child forked from the parent on {@link PythonProcess#start()}, registering on the given ports.
+     */
+    PythonProcess child(int javaPort, int pythonPort, Path socket) {
+        return new PythonProcess() {
+            private volatile Child child;
+            private volatile boolean running;
+            private volatile List<Integer> cpus = List.of();
+
+            @Override
+            public void start() throws IOException {
+                SpacyForkParent.this.start();
+                var forked = new Child();
+                children.put(javaPort, forked);
+                child = forked;
+                running = true;
+                python.send("fork " + javaPort + " " + pythonPort
+                        + " " + (socket == null ? "-" : socket.toAbsolutePath())
+                        + " " + (cpus.isEmpty() ? "-" : cpus.stream().map(String::valueOf).collect(Collectors.joining(","))));
+            }
+
+            @Override
+            public PythonProcess setCpus(List<Integer> cpus) {
+                this.cpus = List.copyOf(cpus);
+                return this;
+            }
+
+            @Override
+            public CompletableFuture<Integer> onExit() {
+                var current = child;
+                if (current == null) return CompletableFuture.failedFuture(new IllegalStateException("Child not forked"));
+                return current.exit;
+            }
+
+            @Override
+            public void stop() {
+                if (!running) return;
+                running = false;
+                try {
+                    python.send("stop " + javaPort);
+                } catch (IOException ignored) {
+                    // Parent already gone, and its children with it
+                }
+            }
+
+            @Override
+            public boolean isAlive() {
+                var current = child;
+                return running && current != null && !current.exit.isDone() && python.isAlive();
+            }
+        };
+    }
+
+    String model() {
+        return model;
+    }
+
+    boolean isAlive() {
+        return python.isAlive();
+    }
+
+    @Override
+    public synchronized void close() {
+        python.stop();
+        started = false;
+    }
+}
@@ -0,0 +1,160 @@
+package udem.taln.wrapper;
+
+import udem.taln.wrapper.dto.NerDTO;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.utils.SpacyUtilities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Coalesces the small requests of concurrent callers of a model into shared batches, so the per call cost
+ * (queueing, Py4J round trip, {@code nlp.pipe} start) is paid once for all of them.
+ * <p>
+ * Items wait until {@link SpacyUtilities#getItemsPerCall(String)} of them are pending or until the window
+ * elapses. The window is what the latency target leaves once the usual time of a batch call is taken out,
+ * bounded by {@link SpacyUtilities#getCoalesceWindowMs()}: it shrinks when calls get slow and grows back when
+ * they are fast.
+ */
+public class SpacyMicroBatcher {
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "spacy-coalescer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private record Pending(NerItemDTO item, CompletableFuture<NerDTO> future) {
+    }
+
+    private final Function<List<NerItemDTO>, CompletableFuture<List<NerDTO>>> sender;
+    private final int maxItems;
+    private final long maxWindowNanos;
+    private final long targetNanos;
+    private List<Pending> pending = new ArrayList<>();
+    private ScheduledFuture<?> timer;
+    // Written under the lock of the batcher
+    private volatile double callNanos;
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * @param pool      the pool of the model, each batch is one of its tasks.
+     * @param batchSize the {@code batch_size} given to {@code nlp.pipe}.
+     * @param maxItems  pending items sent right away, without waiting for the window.
+     */
+    public SpacyMicroBatcher(SpacyWorkerPool pool, int batchSize, int maxItems) {
+        this(items -> pool.submit(worker -> worker.getBatch(pool.getModel(), items, batchSize)), maxItems,
+                SpacyUtilities.getCoalesceWindowMs(), SpacyUtilities.getCoalesceTargetMs());
+    }
+
+    SpacyMicroBatcher(Function<List<NerItemDTO>, CompletableFuture<List<NerDTO>>> sender, int maxItems,
+                      long maxWindowMs, long targetMs) {
+        this.sender = sender;
+        this.maxItems = Math.max(1, maxItems);
+        this.maxWindowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWindowMs));
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, targetMs));
+    }
+
+    /**
+     * Queues the items with those of the other callers.
+     *
+     * @return the results of the items, in their order and with their ids.
+     */
+    public CompletableFuture<List<NerDTO>> submit(List<NerItemDTO> items) {
+        List<CompletableFuture<NerDTO>> futures = new ArrayList<>(items.size());
+        List<List<Pending>> full = new ArrayList<>();
+        synchronized (this) {
+            for (var item : items) {
+                var future = new CompletableFuture<NerDTO>();
+                futures.add(future);
+                pending.add(new Pending(item, future));
+                if (pending.size() >= maxItems) full.add(take());
+            }
+            if (!pending.isEmpty() && timer == null) {
+                timer = TIMER.schedule(this::flush, windowNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        for (var batch : full) send(batch);
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> futures.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * @return the time items currently wait for other callers.
+     */
+    public long getWindowMs() {
+        return TimeUnit.NANOSECONDS.toMillis(windowNanos());
+    }
+
+    /**
+     * @return batches sent so far.
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    private long windowNanos() {
+        return Math.clamp(targetNanos - (long) callNanos, 0, maxWindowNanos);
+    }
+
+    private synchronized void recordCall(double nanos) {
+        callNanos = callNanos == 0 ? nanos : 0.8 * callNanos + 0.2 * nanos;
+    }
+
+    private void flush() {
+        List<Pending> batch;
+        synchronized (this) {
+            batch = take();
+        }
+        if (!batch.isEmpty()) send(batch);
+    }
+
+    private List<Pending> take() {
+        var batch = pending;
+        pending = new ArrayList<>();
+        if (timer != null) timer.cancel(false);
+        timer = null;
+        return batch;
+    }
+
+    /**
+     * Sends the batch with ids of its own, the callers' ids may collide.
+     */
+    private void send(List<Pending> batch) {
+        batches.incrementAndGet();
+        List<NerItemDTO> items = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            var item = batch.get(i).item();
+            items.add(new NerItemDTO(i, item.sentence, item.target));
+        }
+        long start = System.nanoTime();
+        CompletableFuture<List<NerDTO>> call;
+        try {
+            call = sender.apply(items);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((results, error) -> {
+            recordCall(System.nanoTime() - start);
+            if (error != null) {
+                for (var p : batch) p.future().completeExceptionally(error);
+                return;
+            }
+            Map<Integer, NerDTO> byId = new HashMap<>(results.size());
+            for (var dto : results) byId.put(dto.id, dto);
+            for (int i = 0; i < batch.size(); i++) {
+                var p = batch.get(i);
+                var dto = new NerDTO();
+                dto.id = p.item().id;
+                var result = byId.get(i);
+                dto.labels = result == null ? List.of() : result.labels;
+                dto.ents = result == null ? null : result.ents;
+                p.future().complete(dto);
+            }
+        });
+    }
+}
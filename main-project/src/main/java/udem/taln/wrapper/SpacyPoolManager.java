@@ -0,0 +1,191 @@
+package udem.taln.wrapper;
+
+import udem.taln.wrapper.utils.SpacyUtilities;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Keeps one {@link SpacyWorkerPool} per spaCy model (and pipeline profile), so a request only ever reaches workers that have its model
+ * loaded, and a model nobody uses anymore is not kept resident. Pools are created on first use and resized
+ * periodically according to their queue depth and observed latency.
+ */
+public class SpacyPoolManager implements AutoCloseable {
+    private final Map<String, Entry> pools = new ConcurrentHashMap<>();
+    private final PortAllocator ports;
+    private final SpacyWorkerPool.ScalingPolicy policy;
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final BiFunction<String, Integer, SpacyWrapperService> services;
+    private ScheduledExecutorService scaler;
+    private volatile boolean started;
+
+    /**
+     * @param started completed once the minimum workers of the pool registered.
+     */
+    private record Entry(SpacyWorkerPool pool, CompletableFuture<Void> started) {
+        boolean isStarted() {
+            return started.isDone() && !started.isCompletedExceptionally();
+        }
+    }
+
+    public SpacyPoolManager() {
+        this(SpacyUtilities.getMinWorkers(), SpacyUtilities.getMaxWorkers(), SpacyUtilities.getBasePort(),
+                new SpacyWorkerPool.ScalingPolicy(
+                        SpacyUtilities.getScaleUpQueuePerWorker(),
+                        SpacyUtilities.getTargetLatencyMs(),
+                        SpacyUtilities.getIdleTimeoutMs()));
+    }
+
+    /**
+     * @param minWorkers workers kept per model once it has been used.
+     * @param maxWorkers workers allowed per model.
+     * @param basePort   gateway port of the first worker slot.
+     * @param policy     thresholds to grow and shrink the pools.
+     */
+    public SpacyPoolManager(int minWorkers, int maxWorkers, int basePort, SpacyWorkerPool.ScalingPolicy policy) {
+        this(minWorkers, maxWorkers, basePort, policy, null);
+    }
+
+    /**
+     * @param services creates the service of a worker from its model and slot (e.g. stubs in tests), the default
+     *                 ones if {@code null}.
+     */
+    public SpacyPoolManager(int minWorkers, int maxWorkers, int basePort, SpacyWorkerPool.ScalingPolicy policy,
+                            BiFunction<String, Integer, SpacyWrapperService> services) {
+        this.minWorkers = minWorkers;
+        this.maxWorkers = maxWorkers;
+        // Injected services bind no port of their slot
+        this.ports = services == null ? new PortAllocator(basePort) : new PortAllocator(basePort, port -> true);
+        this.policy = policy;
+        this.services = services;
+    }
+
+    public synchronized void start() {
+        if (started) return;
+        scaler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "spacy-scaler");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = SpacyUtilities.getScaleIntervalMs();
+        scaler.scheduleWithFixedDelay(this::autoscale, interval, interval, TimeUnit.MILLISECONDS);
+        started = true;
+    }
+
+    /**
+     * Gets a worker of the model loading in the background, so it is ready by the time the first call comes.
+     *
+     * @param model   the spaCy model, e.g. {@code en_core_web_lg}.
+     * @param profile the components to load.
+     */
+    public void prewarm(String model, PipelineProfile profile) {
+        pool(model, profile).prewarm();
+    }
+
+    /**
+     * @return the pool of the model, created (with its minimum number of workers) on first use. The first call
+     * waits for those workers, the pools of other models starting meanwhile.
+     */
+    public SpacyWorkerPool pool(String model, PipelineProfile profile) {
+        if (!started) throw new IllegalStateException("Pool manager not started");
+        String key = model + "/" + profile;
+        var entry = pools.get(key);
+        boolean created = false;
+        if (entry == null) {
+            synchronized (this) {
+                entry = pools.get(key);
+                if (entry == null) {
+                    entry = create(model, profile);
+                    pools.put(key, entry);
+                    created = true;
+                }
+            }
+        }
+        if (created) {
+            // Out of the lock: loading the models of the other pools goes on side by side
+            try {
+                entry.pool().start();
+                entry.started().complete(null);
+            } catch (RuntimeException e) {
+                // The next call tries again with a new pool
+                pools.remove(key, entry);
+                entry.pool().close();
+                entry.started().completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            entry.started().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+        return entry.pool();
+    }
+
+    private Entry create(String model, PipelineProfile profile) {
+        var pool = new SpacyWorkerPool(model, profile, minWorkers, maxWorkers, ports, policy,
+                services == null ? null : slot -> services.apply(model, slot));
+        // The workers of every pool share the cores, the next ones of the other pools get fewer threads too
+        int threads = SpacyUtilities.getTorchThreads(maxWorkers * (pools.size() + 1));
+        for (var other : pools.values()) other.pool().setWorkerThreads(threads);
+        pool.setWorkerThreads(threads);
+        return new Entry(pool, new CompletableFuture<>());
+    }
+
+    /**
+     * @return the pools whose minimum workers registered.
+     */
+    private List<SpacyWorkerPool> startedPools() {
+        return pools.values().stream().filter(Entry::isStarted).map(Entry::pool).toList();
+    }
+
+    /**
+     * @return one line per pool with the memory of its workers and how many were recycled, for logs.
+     */
+    public String memoryReport() {
+        StringBuilder sb = new StringBuilder();
+        for (var pool : startedPools()) {
+            sb.append(pool.getModel()).append(" [").append(pool.getProfile()).append("] recycled=")
+                    .append(pool.getRecycleCount());
+            for (var worker : pool.stats()) {
+                sb.append(" | slot ").append(worker.slot()).append(": ")
+                        .append(worker.residentBytes() < 0 ? "?" : worker.residentBytes() / (1024 * 1024) + " MB")
+                        .append(", ").append(worker.inFlight()).append(" in flight");
+            }
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    private void autoscale() {
+        for (var pool : startedPools()) {
+            try {
+                pool.autoscale();
+            } catch (Exception e) {
+                System.err.println("[SpacyPoolManager] Autoscaling of " + pool.getModel() + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scaler != null) scaler.shutdownNow();
+        for (var entry : pools.values()) {
+            try {
+                entry.pool().close();
+            } catch (Exception ignored) {
+            }
+        }
+        pools.clear();
+        started = false;
+    }
+}
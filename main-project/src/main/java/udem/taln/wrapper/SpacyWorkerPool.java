@@ -0,0 +1,437 @@
+package udem.taln.wrapper;
+
+import udem.taln.wrapper.utils.SpacyUtilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Pool of Python workers serving a single spaCy model, each one being its own process on its own port pair.
+ * Since one Python process only uses one core (GIL), this is how the wrapper scales with the machine, and since a
+ * worker only ever loads the model of its pool, memory is only paid for the models actually in use.
+ * <p>
+ * Tasks go to a shared queue and every worker pulls from it as soon as it has a free slot
+ * ({@link SpacyUtilities#getMaxInFlight()} per worker), so a slow worker never holds back the others.
+ * The pool is grown and shrunk by {@link #autoscale()}, called periodically by the {@link SpacyPoolManager}.
+ */
+public class SpacyWorkerPool implements AutoCloseable {
+    private static final long POLL_MS = 200;
+    private static final int MAX_DISPATCHES = 2;
+
+    private final String model;
+    private final PipelineProfile profile;
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final PortAllocator ports;
+    private final ScalingPolicy policy;
+    // Creates the service of a worker slot, null for the default ones
+    private final IntFunction<SpacyWrapperService> services;
+    private final List<Worker> workers = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<Task<?>> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService starter = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "spacy-starter");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile int starting;
+    // Threads of the workers started from now on, the cores being shared with the workers of the other pools
+    private volatile int workerThreads = SpacyUtilities.getTorchThreads();
+    // Only with forked workers, the process loading the model once for all of them
+    private SpacyForkParent forkParent;
+    private volatile double latencyMs;
+    private final AtomicInteger recycled = new AtomicInteger();
+    private long lastMemorySample = System.nanoTime();
+    private volatile boolean closed;
+
+    /**
+     * Thresholds used to grow and shrink a pool.
+     *
+     * @param queuePerWorker  queued tasks per worker above which the pool grows.
+     * @param targetLatencyMs queue + processing time of a task above which the pool grows.
+     * @param idleTimeoutMs   time after which an idle worker is stopped.
+     */
+    public record ScalingPolicy(int queuePerWorker, long targetLatencyMs, long idleTimeoutMs) {
+    }
+
+    /**
+     * @param slot          the port slot of the worker.
+     * @param residentBytes its Python memory at the last sample, -1 if unknown.
+     * @param inFlight      calls it is running.
+     * @param attached      whether its Python is a daemon shared with other runs.
+     */
+    public record WorkerStats(int slot, long residentBytes, int inFlight, boolean attached) {
+    }
+
+    private record Task<T>(Function<SpacyWrapperService, T> call, CompletableFuture<T> future, long queuedAt,
+                           int dispatches) {
+    }
+
+    private final class Worker {
+        final int slot;
+        final SpacyWrapperService service;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger loops = new AtomicInteger();
+        volatile boolean retiring;
+        volatile long lastUsed = System.nanoTime();
+        volatile long residentBytes = -1;
+
+        Worker(int slot) {
+            this.slot = slot;
+            this.service = services != null ? services.apply(slot) : newService(slot);
+        }
+    }
+
+    SpacyWorkerPool(String model, PipelineProfile profile, int minWorkers, int maxWorkers, PortAllocator ports, ScalingPolicy policy) {
+        this(model, profile, minWorkers, maxWorkers, ports, policy, null);
+    }
+
+    /**
+     * @param services creates the service of a worker slot (e.g. stubs in tests), the default ones if {@code null}.
+     */
+    SpacyWorkerPool(String model, PipelineProfile profile, int minWorkers, int maxWorkers, PortAllocator ports,
+                    ScalingPolicy policy, IntFunction<SpacyWrapperService> services) {
+        this.services = services;
+        this.model = model;
+        this.profile = profile;
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.minWorkers = Math.clamp(minWorkers, 0, this.maxWorkers);
+        this.ports = ports;
+        this.policy = policy;
+    }
+
+    /**
+     * Starts the minimum number of workers side by side, and fails if any of them does not register.
+     */
+    void start() {
+        List<Future<?>> launched = new ArrayList<>();
+        for (int i = 0; i < minWorkers; i++) launched.add(grow());
+        try {
+            for (var f : launched) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while starting the " + model + " workers", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to start the " + model + " workers", e.getCause());
+        }
+    }
+
+    /**
+     * Queues a call, run by the first free worker of the pool.
+     *
+     * @param call what to do with the worker.
+     * @return the result of the call once a worker ran it.
+     */
+    public <T> CompletableFuture<T> submit(Function<SpacyWrapperService, T> call) {
+        if (closed) throw new IllegalStateException("Worker pool of " + model + " is closed");
+        var future = new CompletableFuture<T>();
+        queue.add(new Task<>(call, future, System.nanoTime(), 1));
+        // No worker at all (first call, or everything was idle): no need to wait for the next tick
+        if (workers.isEmpty() && starting == 0) autoscale();
+        return future;
+    }
+
+    /**
+     * Grows the pool when tasks pile up or wait too long, shrinks it when a worker stays idle.
+     * Only one worker is started at a time, since starting one already takes the time of loading a model.
+     */
+    synchronized void autoscale() {
+        if (closed) return;
+        sampleMemory();
+        int live = workers.size();
+        int queued = queue.size();
+
+        if (starting == 0 && live < maxWorkers && queued > 0) {
+            boolean empty = live == 0;
+            boolean deep = queued > live * policy.queuePerWorker();
+            boolean slow = latencyMs > policy.targetLatencyMs();
+            if (empty || deep || slow) {
+                System.out.println("[SpacyWorkerPool] " + model + " growing to " + (live + 1)
+                        + " (queued=" + queued + ", latency=" + Math.round(latencyMs) + "ms)");
+                grow();
+                return;
+            }
+        }
+
+        if (queued == 0 && live > minWorkers) {
+            long now = System.nanoTime();
+            for (var worker : workers) {
+                if (worker.inFlight.get() == 0 && !worker.retiring
+                        && now - worker.lastUsed > TimeUnit.MILLISECONDS.toNanos(policy.idleTimeoutMs())) {
+                    System.out.println("[SpacyWorkerPool] " + model + " shrinking to " + (live - 1));
+                    worker.retiring = true;
+                    workers.remove(worker);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Samples the memory of every worker each {@link SpacyUtilities#getMemorySampleMs()}. A worker above
+     * {@link SpacyUtilities#getMaxResidentMb()} takes no more tasks, and is stopped once its calls are done while a
+     * fresh one takes its place. Only one worker is recycled per sample, so the pool never drains at once.
+     */
+    private void sampleMemory() {
+        long now = System.nanoTime();
+        if (now - lastMemorySample < TimeUnit.MILLISECONDS.toNanos(SpacyUtilities.getMemorySampleMs())) return;
+        lastMemorySample = now;
+        for (var worker : workers) worker.residentBytes = worker.service.residentBytes().orElse(-1);
+        var slot = overCeiling(stats(), SpacyUtilities.getMaxResidentMb() * 1024 * 1024);
+        if (slot.isEmpty()) return;
+        Worker over = null;
+        for (var worker : workers) {
+            if (worker.slot == slot.getAsInt()) over = worker;
+        }
+        if (over == null) return;
+        System.out.println("[SpacyWorkerPool] " + model + " worker " + over.slot + " uses "
+                + over.residentBytes / (1024 * 1024) + " MB, recycling it once its calls are done");
+        over.retiring = true;
+        workers.remove(over);
+        recycled.incrementAndGet();
+        if (starting == 0) grow();
+    }
+
+    /**
+     * @param ceiling memory above which a worker is recycled, in bytes, 0 for none.
+     * @return the slot of the first worker above the ceiling, empty if none.
+     */
+    static OptionalInt overCeiling(List<WorkerStats> stats, long ceiling) {
+        if (ceiling <= 0) return OptionalInt.empty();
+        for (var worker : stats) {
+            // A daemon is shared with other runs, it keeps its memory in check itself
+            if (worker.residentBytes() > ceiling && !worker.attached()) return OptionalInt.of(worker.slot());
+        }
+        return OptionalInt.empty();
+    }
+
+    /**
+     * Starts a worker if the pool has none, without waiting for it: its model loads while the caller does something else.
+     */
+    synchronized void prewarm() {
+        if (!closed && workers.isEmpty() && starting == 0) grow();
+    }
+
+    private synchronized Future<?> grow() {
+        starting++;
+        int slot = ports.acquire();
+        return starter.submit(() -> {
+            var worker = new Worker(slot);
+            try {
+                worker.service.start();
+                // The worker only takes tasks once its model is in memory, its first call is then as fast as the others
+                worker.service.awaitModel(model);
+            } catch (RuntimeException e) {
+                worker.service.close();
+                ports.release(slot);
+                System.err.println("[SpacyWorkerPool] Failed to start a " + model + " worker: " + e.getMessage());
+                synchronized (this) {
+                    starting--;
+                    // Nobody left to run the queued tasks, better fail them than leave callers waiting forever
+                    if (workers.isEmpty() && starting == 0) failPending(e);
+                }
+                releaseForkParent();
+                throw e;
+            }
+            synchronized (this) {
+                starting--;
+            }
+            if (closed) {
+                stop(worker);
+                return;
+            }
+            workers.add(worker);
+            worker.service.broken().thenAccept(e -> replace(worker));
+            // One loop per call the worker may have in flight, on virtual threads since they mostly wait for Python
+            int loops = SpacyUtilities.getMaxInFlight();
+            worker.loops.set(loops);
+            for (int i = 0; i < loops; i++) {
+                Thread.ofVirtual().name("spacy-" + model + "-" + slot + "-" + i).start(() -> loop(worker));
+            }
+        });
+    }
+
+    /**
+     * Retires a worker whose stuck Python could not be restarted, a fresh one takes its place.
+     */
+    private synchronized void replace(Worker worker) {
+        if (closed || worker.retiring) return;
+        System.err.println("[SpacyWorkerPool] " + model + " worker " + worker.slot + " could not be restarted, replacing it");
+        worker.retiring = true;
+        workers.remove(worker);
+        if (starting == 0) grow();
+    }
+
+    private SpacyWrapperService newService(int slot) {
+        SpacyWrapperService service;
+        if (SpacyUtilities.isDaemonMode()) {
+            service = SpacyWrapperService.attach(List.of(model), profile);
+        } else if (SpacyUtilities.isForkWorkers()) {
+            service = new SpacyWrapperService(ports.javaPort(slot), ports.pythonPort(slot), forkParent(), profile);
+        } else {
+            service = new SpacyWrapperService(ports.javaPort(slot), ports.pythonPort(slot),
+                    List.of(model), List.of(model), profile, SpacyUtilities.getTransport(), workerThreads);
+        }
+        if (SpacyUtilities.isCpuAffinity()) service.setCpus(CpuPlacement.forSlot(slot, workerThreads));
+        return service;
+    }
+
+    private synchronized SpacyForkParent forkParent() {
+        if (forkParent == null) forkParent = new SpacyForkParent(model, profile, workerThreads);
+        return forkParent;
+    }
+
+    /**
+     * Stops the fork parent once the pool has no worker left, so an unused model does not stay resident.
+     */
+    private synchronized void releaseForkParent() {
+        if (forkParent != null && workers.isEmpty() && starting == 0) {
+            forkParent.close();
+            forkParent = null;
+        }
+    }
+
+    private void loop(Worker worker) {
+        try {
+            while (!worker.retiring && !closed) {
+                Task<?> task;
+                try {
+                    task = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task == null) continue;
+                worker.inFlight.incrementAndGet();
+                try {
+                    run(task, worker.service);
+                } finally {
+                    worker.inFlight.decrementAndGet();
+                    worker.lastUsed = System.nanoTime();
+                }
+            }
+        } finally {
+            if (worker.loops.decrementAndGet() == 0) stop(worker);
+        }
+    }
+
+    private <T> void run(Task<T> task, SpacyWrapperService service) {
+        try {
+            task.future().complete(task.call().apply(service));
+        } catch (Throwable e) {
+            // A task timing out on a stuck worker gets another chance on the others, while that one is replaced
+            if ((isTimeout(e) || service.broken().isDone()) && task.dispatches() < MAX_DISPATCHES && !closed) {
+                queue.add(new Task<>(task.call(), task.future(), task.queuedAt(), task.dispatches() + 1));
+                return;
+            }
+            task.future().completeExceptionally(e);
+        }
+        recordLatency((System.nanoTime() - task.queuedAt()) / 1_000_000.0);
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof TimeoutException) return true;
+        }
+        return false;
+    }
+
+    private synchronized void recordLatency(double ms) {
+        latencyMs = latencyMs == 0 ? ms : 0.8 * latencyMs + 0.2 * ms;
+    }
+
+    private void stop(Worker worker) {
+        try {
+            worker.service.close();
+        } catch (Exception ignored) {
+        }
+        ports.release(worker.slot);
+        releaseForkParent();
+    }
+
+    private void failPending(Throwable cause) {
+        Task<?> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future().completeExceptionally(cause);
+        }
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public PipelineProfile getProfile() {
+        return profile;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int size() {
+        return workers.size();
+    }
+
+    /**
+     * @param threads threads of each worker started from now on, see {@link SpacyPoolManager}.
+     */
+    void setWorkerThreads(int threads) {
+        this.workerThreads = threads;
+    }
+
+    int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public int queued() {
+        return queue.size();
+    }
+
+    public double getLatencyMs() {
+        return latencyMs;
+    }
+
+    /**
+     * @return the workers of the pool with their memory at the last sample.
+     */
+    public List<WorkerStats> stats() {
+        List<WorkerStats> stats = new ArrayList<>();
+        for (var worker : workers) {
+            stats.add(new WorkerStats(worker.slot, worker.residentBytes, worker.inFlight.get(), worker.service.isAttached()));
+        }
+        return stats;
+    }
+
+    /**
+     * @return workers recycled for their memory since the pool was created.
+     */
+    public int getRecycleCount() {
+        return recycled.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        failPending(new IllegalStateException("Worker pool of " + model + " closed"));
+        // Idle workers are stopped right away, busy ones once their call returns (the slot is released by their loop)
+        for (var worker : workers) {
+            worker.retiring = true;
+            if (worker.inFlight.get() == 0) {
+                try {
+                    worker.service.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+        workers.clear();
+        starter.shutdownNow();
+        if (forkParent != null) forkParent.close();
+    }
+}
@@ -1,131 +1,595 @@
 package udem.taln.wrapper;
 
+import udem.taln.wrapper.dto.EntityDTO;
 import udem.taln.wrapper.dto.NerDTO;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.dto.ProfileDTO;
 import udem.taln.wrapper.parsers.WrapperParsers;
+import udem.taln.wrapper.trace.CallTrace;
+import udem.taln.wrapper.trace.Tracer;
+import udem.taln.wrapper.transport.Py4JTransport;
+import udem.taln.wrapper.transport.SpacyTransport;
+import udem.taln.wrapper.transport.UnixSocketTransport;
+import udem.taln.wrapper.utils.ProcessMemory;
+import udem.taln.wrapper.utils.SpacyUtilities;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 public class SpacyWrapperService implements AutoCloseable {
-    private final WrapperGatewayServer gateway = new WrapperGatewayServer();
-    private final PythonLauncher python;
+    private static final int ATTEMPTS = 3;
+    private static final ExecutorService CALLS = Executors.newVirtualThreadPerTaskExecutor();
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "spacy-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+    // Shared by all the services, a sentence parsed by one worker is known to the others of its model and profile
+    private static final EntityCache ENTITIES = new EntityCache(SpacyUtilities.getEntityCacheSize());
+
+    private final WrapperGatewayServer gateway;
+    private final PythonProcess python;
+    private final SpacyTransport transport;
+    // Only in attach mode, gateway and python are then unused
+    private final SpacyDaemonClient daemon;
+    // Models Python loads on its own, awaited again when a stuck process is replaced
+    private final List<String> preload;
+    // Entities depend on the components loaded, the cache keeps those of each profile apart
+    private final PipelineProfile profile;
+    private final Semaphore inFlight = new Semaphore(SpacyUtilities.getMaxInFlight());
+    // Start time of each Python call in progress, by call id
+    private final Map<Long, Long> running = new ConcurrentHashMap<>();
+    private final AtomicLong callIds = new AtomicLong();
+    // Completed while Python can take calls, replaced while a stuck process is being replaced
+    private volatile CompletableFuture<Void> ready = CompletableFuture.completedFuture(null);
+    private volatile boolean recycling;
+    // Completed when a stuck process could not be replaced, the service is of no use from then on
+    private final CompletableFuture<Throwable> broken = new CompletableFuture<>();
+    private ScheduledFuture<?> watchdog;
     private volatile boolean started;
 
     public SpacyWrapperService(String pythonCmd, String pythonScriptPath) {
+        this.gateway = new WrapperGatewayServer();
         this.python = new PythonLauncher(pythonCmd, new File(pythonScriptPath));
+        this.transport = new Py4JTransport(this::requiredPy);
+        this.daemon = null;
+        this.preload = List.of();
+        this.profile = PipelineProfile.FULL;
     }
 
     public SpacyWrapperService() {
+        this.gateway = new WrapperGatewayServer();
         this.python = new PythonLauncher();
+        this.transport = new Py4JTransport(this::requiredPy);
+        this.daemon = null;
+        this.preload = List.of();
+        this.profile = PipelineProfile.FULL;
+    }
+
+    /**
+     * Service on its own port pair, so several of them (and so several Python processes) can run side by side.
+     *
+     * @param javaPort   port of the Java gateway.
+     * @param pythonPort port of the Python callback server.
+     */
+    public SpacyWrapperService(int javaPort, int pythonPort) {
+        this(javaPort, pythonPort, List.of());
+    }
+
+    /**
+     * @param models the only models the Python process is allowed to load, all of them if empty.
+     *               They are also preloaded, since a process dedicated to some models will be asked for them.
+     */
+    public SpacyWrapperService(int javaPort, int pythonPort, List<String> models) {
+        this(javaPort, pythonPort, models, models, PipelineProfile.FULL);
     }
 
     /**
-     * Starts Gateway + Python
+     * @param models  the only models the Python process is allowed to load, all of them if empty.
+     * @param preload the models loaded in the background as soon as Python registered.
+     * @param profile the components loaded for every model of the process.
+     */
+    public SpacyWrapperService(int javaPort, int pythonPort, List<String> models, List<String> preload, PipelineProfile profile) {
+        this(javaPort, pythonPort, models, preload, profile, SpacyUtilities.getTransport());
+    }
+
+    /**
+     * @param transport how batches reach Python, single sentence calls always go through Py4J.
+     */
+    public SpacyWrapperService(int javaPort, int pythonPort, List<String> models, List<String> preload,
+                               PipelineProfile profile, SpacyTransport.Kind transport) {
+        this(javaPort, pythonPort, models, preload, profile, transport, SpacyUtilities.getTorchThreads());
+    }
+
+    /**
+     * @param threads threads of the Python process (torch, OpenMP, MKL, BLAS).
+     */
+    public SpacyWrapperService(int javaPort, int pythonPort, List<String> models, List<String> preload,
+                               PipelineProfile profile, SpacyTransport.Kind transport, int threads) {
+        this.gateway = new WrapperGatewayServer(javaPort, pythonPort);
+        List<String> args = new ArrayList<>(List.of(
+                "--java-port", String.valueOf(javaPort),
+                "--python-port", String.valueOf(pythonPort)));
+        if (!models.isEmpty()) {
+            args.add("--models");
+            args.add(String.join(",", models));
+        }
+        if (!preload.isEmpty()) {
+            args.add("--preload");
+            args.add(String.join(",", preload));
+        }
+        args.addAll(PythonLauncher.torchArgs(models, threads));
+        if (!profile.exclude().isEmpty()) {
+            args.add("--exclude");
+            args.add(String.join(",", profile.exclude()));
+        }
+        Path socket = transport == SpacyTransport.Kind.UDS ? socketPath(javaPort) : null;
+        if (socket != null) {
+            args.add("--uds");
+            args.add(socket.toAbsolutePath().toString());
+        }
+        this.transport = socket != null ? new UnixSocketTransport(socket) : new Py4JTransport(this::requiredPy);
+        this.python = new PythonLauncher(args).setThreads(threads);
+        this.daemon = null;
+        this.preload = List.copyOf(preload);
+        this.profile = profile;
+    }
+
+    /**
+     * Service whose Python is a child forked by the parent, sharing the model it already loaded.
+     *
+     * @param profile the components the parent loaded.
+     */
+    SpacyWrapperService(int javaPort, int pythonPort, SpacyForkParent parent, PipelineProfile profile) {
+        this.gateway = new WrapperGatewayServer(javaPort, pythonPort);
+        Path socket = SpacyUtilities.getTransport() == SpacyTransport.Kind.UDS ? socketPath(javaPort) : null;
+        this.transport = socket != null ? new UnixSocketTransport(socket) : new Py4JTransport(this::requiredPy);
+        this.python = parent.child(javaPort, pythonPort, socket);
+        this.daemon = null;
+        this.preload = List.of(parent.model());
+        this.profile = profile;
+    }
+
+    /**
+     * Service on the given gateway, Python process and transport, e.g. stubs in tests.
+     *
+     * @param preload the models awaited again when a stuck process is replaced.
+     */
+    SpacyWrapperService(WrapperGatewayServer gateway, PythonProcess python, SpacyTransport transport, List<String> preload) {
+        this(gateway, python, transport, preload, PipelineProfile.FULL);
+    }
+
+    SpacyWrapperService(WrapperGatewayServer gateway, PythonProcess python, SpacyTransport transport, List<String> preload,
+                        PipelineProfile profile) {
+        this.gateway = gateway;
+        this.python = python;
+        this.transport = transport;
+        this.daemon = null;
+        this.preload = List.copyOf(preload);
+        this.profile = profile;
+    }
+
+    private static Path socketPath(int javaPort) {
+        return Path.of(System.getProperty("java.io.tmpdir"), "taln-spacy-" + javaPort + ".sock");
+    }
+
+    private SpacyWrapperService(SpacyDaemonClient daemon, PipelineProfile profile) {
+        this.gateway = null;
+        this.python = null;
+        this.daemon = daemon;
+        this.preload = List.of();
+        this.profile = profile;
+        this.transport = (model, items, batchSize) -> daemon.transport().batch(model, items, batchSize);
+    }
+
+    /**
+     * Service attached to a persistent daemon rather than to its own Python process, see {@link SpacyDaemonClient}.
+     * {@link #start()} reuses a running daemon serving the models, or launches one, and {@link #close()} only
+     * releases it.
+     *
+     * @param models  the models the daemon serves.
+     * @param profile the components loaded for every model.
+     */
+    public static SpacyWrapperService attach(List<String> models, PipelineProfile profile) {
+        return new SpacyWrapperService(new SpacyDaemonClient(models, profile, SpacyUtilities.getTransport()), profile);
+    }
+
+    /**
+     * Pins the Python process to some cores, from its next start.
+     */
+    void setCpus(List<Integer> cpus) {
+        if (python != null) python.setCpus(cpus);
+    }
+
+    /**
+     * Starts Gateway + Python, and returns as soon as Python registered (models may still be loading,
+     * see {@link #awaitModel(String)}).
      */
     public synchronized void start() {
         if (started) return;
+        if (daemon != null) {
+            daemon.attach();
+            started = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+            return;
+        }
         gateway.start();
         try {
             python.start();
+            await(gateway.entry().registered(), SpacyUtilities.getRegistrationTimeoutMs(), "register");
         } catch (Exception e) {
-            throw new RuntimeException("Failed to start Python", e);
-        }
-        // Increased wait time and added retry logic for Python registration
-        if (!waitForPythonRegistration(Duration.ofSeconds(30))) {
-            boolean alive = python.isAlive();
-            throw new RuntimeException("Python failed to register within timeout period. Python alive=" + alive);
+            python.stop();
+            gateway.stop();
+            throw e instanceof RuntimeException re ? re : new RuntimeException("Failed to start Python", e);
         }
         started = true;
+        long period = Math.max(1_000L, SpacyUtilities.getHungTimeoutMs() / 4);
+        watchdog = WATCHDOG.scheduleWithFixedDelay(this::checkHung, period, period, TimeUnit.MILLISECONDS);
 
         Runtime.getRuntime().addShutdownHook(new Thread(this::close));
     }
 
     /**
-     * Wait for Python to register with the gateway with retry logic
+     * A Python call running for longer than {@link SpacyUtilities#getHungTimeoutMs()} means the process is wedged:
+     * it is killed and replaced, the calls it had in flight fail and are retried on the new process.
      */
-    private boolean waitForPythonRegistration(Duration timeout) {
-        long endTime = System.currentTimeMillis() + timeout.toMillis();
-        long lastLog = 0;
-        while (System.currentTimeMillis() < endTime) {
-            try {
-                if (gateway.entry().isPythonRegistered()) {
-                    return true;
-                }
-                // If Python died, abort early with a clear message
-                if (!python.isAlive()) {
-                    return false;
-                }
-                if (System.currentTimeMillis() - lastLog > 2000) {
-                    System.out.println("[SpacyWrapperService] Waiting for Python to register...");
-                    lastLog = System.currentTimeMillis();
-                }
-                Thread.sleep(500);
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-                return false;
-            } catch (Exception ignore) {
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    return false;
+    private void checkHung() {
+        if (recycling || !started) return;
+        long now = System.nanoTime();
+        long hungNs = TimeUnit.MILLISECONDS.toNanos(SpacyUtilities.getHungTimeoutMs());
+        for (long since : running.values()) {
+            if (now - since > hungNs) {
+                recycling = true;
+                CALLS.execute(this::recycle);
+                return;
+            }
+        }
+    }
+
+    void recycle() {
+        var next = new CompletableFuture<Void>();
+        ready = next;
+        try {
+            synchronized (this) {
+                if (!started) {
+                    next.completeExceptionally(new IllegalStateException("Python service closed"));
+                    return;
                 }
+                System.err.println("[SpacyWrapperService] Python on port " + gateway.getJavaPort() + " is stuck, restarting it");
+                python.stop();
+                // Calls of the killed process fail on their own, they no longer tell anything about the new one
+                running.clear();
+                gateway.entry().reset();
+                python.start();
+                await(gateway.entry().registered(), SpacyUtilities.getRegistrationTimeoutMs(), "register");
             }
+            for (String model : preload) awaitModel(model);
+            System.out.println("[SpacyWrapperService] Python on port " + gateway.getJavaPort() + " restarted");
+            next.complete(null);
+        } catch (Exception e) {
+            System.err.println("[SpacyWrapperService] Restart of Python on port " + gateway.getJavaPort() + " failed: " + e.getMessage());
+            python.stop();
+            next.completeExceptionally(e);
+            broken.complete(e);
+        } finally {
+            recycling = false;
         }
-        return false;
     }
 
-    public NerDTO getLG(String sentence) {
-        return withRetry(() -> {
-            var json = requiredPy().processLG(sentence);
-            return WrapperParsers.parseNER(json);
+    /**
+     * @return completed with the error of the restart once a stuck Python process could not be replaced: calls then
+     * fail right away, and the service should be closed.
+     */
+    CompletableFuture<Throwable> broken() {
+        return broken;
+    }
+
+    /**
+     * @return the pid of the Python process serving this service, empty until it registered.
+     */
+    public OptionalLong pid() {
+        if (daemon != null) return daemon.pid();
+        int pid = gateway.entry().pid();
+        return pid > 0 ? OptionalLong.of(pid) : OptionalLong.empty();
+    }
+
+    /**
+     * @return the memory of the Python process, see {@link ProcessMemory#residentBytes(long)}.
+     */
+    public OptionalLong residentBytes() {
+        var pid = pid();
+        return pid.isPresent() ? ProcessMemory.residentBytes(pid.getAsLong()) : OptionalLong.empty();
+    }
+
+    /**
+     * @return whether the Python process is shared with other JVMs, and so cannot be restarted from here.
+     */
+    public boolean isAttached() {
+        return daemon != null;
+    }
+
+    /**
+     * Blocks until Python reports the model as loaded, returns right away if it already is.
+     *
+     * @param model the spaCy model, e.g. {@code en_core_web_lg}.
+     */
+    public void awaitModel(String model) {
+        if (daemon != null) {
+            daemon.awaitModel(model, SpacyUtilities.getModelLoadTimeoutMs());
+            return;
+        }
+        await(gateway.entry().modelLoaded(model), SpacyUtilities.getModelLoadTimeoutMs(), "load " + model);
+    }
+
+    /**
+     * Waits for an event reported by Python, failing as soon as the process exits instead of at the timeout.
+     */
+    private void await(CompletableFuture<?> event, long timeoutMs, String what) {
+        CompletableFuture<Object> exited = python.onExit().thenApply(code -> {
+            throw new IllegalStateException("Python exited with code " + code + " before it could " + what
+                    + ". Check console output above for errors.");
         });
+        try {
+            CompletableFuture.anyOf(event, exited).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Python did not " + what + " within " + timeoutMs + " ms. Python alive=" + python.isAlive());
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Python failed to " + what, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for Python to " + what, e);
+        }
+    }
+
+    public NerDTO getLG(String sentence) {
+        return join(getLGAsync(sentence));
     }
 
     public NerDTO getLG(String sentence, String target) {
-        return withRetry(() -> {
-            var json = requiredPy().processLG(sentence, target);
-            return WrapperParsers.parseNER(json);
-        });
+        return join(getLGAsync(sentence, target));
     }
 
     public NerDTO getMD(String sentence) {
-        return withRetry(() -> {
-            var json = requiredPy().processMD(sentence);
-            return WrapperParsers.parseNER(json);
-        });
+        return join(getMDAsync(sentence));
     }
 
     public NerDTO getMD(String sentence, String target) {
-        return withRetry(() -> {
-            var json = requiredPy().processMD(sentence, target);
-            return WrapperParsers.parseNER(json);
-        });
+        return join(getMDAsync(sentence, target));
     }
 
     public NerDTO getSM(String sentence) {
-        return withRetry(() -> {
-            var json = requiredPy().processSM(sentence);
-            return WrapperParsers.parseNER(json);
-        });
+        return join(getSMAsync(sentence));
     }
 
     public NerDTO getSM(String sentence, String target) {
-        return withRetry(() -> {
-            var json = requiredPy().processSM(sentence, target);
-            return WrapperParsers.parseNER(json);
-        });
+        return join(getSMAsync(sentence, target));
+    }
+
+    public NerDTO getTRF(String sentence) {
+        return join(getTRFAsync(sentence));
+    }
+
+    public NerDTO getTRF(String sentence, String target) {
+        return join(getTRFAsync(sentence, target));
+    }
+
+    /**
+     * @param deadline time given to the call, retries included, after which it fails with a {@link TimeoutException}.
+     */
+    public NerDTO getLG(String sentence, String target, Duration deadline) {
+        return join(getLGAsync(sentence, target, deadline));
+    }
+
+    public NerDTO getMD(String sentence, String target, Duration deadline) {
+        return join(getMDAsync(sentence, target, deadline));
+    }
+
+    public NerDTO getSM(String sentence, String target, Duration deadline) {
+        return join(getSMAsync(sentence, target, deadline));
+    }
+
+    public NerDTO getTRF(String sentence, String target, Duration deadline) {
+        return join(getTRFAsync(sentence, target, deadline));
+    }
+
+    public CompletableFuture<NerDTO> getLGAsync(String sentence) {
+        return lookup("en_core_web_lg", sentence, null, callTimeout());
     }
 
-//    public NerDTO getTRF(String sentence) {
-//        return withRetry(() -> {
-//            var json = requiredPy().processTRF(sentence);
-//            return WrapperParsers.parseNER(json);
-//        });
-//    }
+    public CompletableFuture<NerDTO> getLGAsync(String sentence, String target) {
+        return lookup("en_core_web_lg", sentence, target, callTimeout());
+    }
+
+    public CompletableFuture<NerDTO> getMDAsync(String sentence) {
+        return lookup("en_core_web_md", sentence, null, callTimeout());
+    }
+
+    public CompletableFuture<NerDTO> getMDAsync(String sentence, String target) {
+        return lookup("en_core_web_md", sentence, target, callTimeout());
+    }
+
+    public CompletableFuture<NerDTO> getSMAsync(String sentence) {
+        return lookup("en_core_web_sm", sentence, null, callTimeout());
+    }
+
+    public CompletableFuture<NerDTO> getSMAsync(String sentence, String target) {
+        return lookup("en_core_web_sm", sentence, target, callTimeout());
+    }
+
+    public CompletableFuture<NerDTO> getTRFAsync(String sentence) {
+        return lookup("en_core_web_trf", sentence, null, callTimeout());
+    }
+
+    public CompletableFuture<NerDTO> getTRFAsync(String sentence, String target) {
+        return lookup("en_core_web_trf", sentence, target, callTimeout());
+    }
+
+    public CompletableFuture<NerDTO> getLGAsync(String sentence, String target, Duration deadline) {
+        return lookup("en_core_web_lg", sentence, target, deadline);
+    }
+
+    public CompletableFuture<NerDTO> getMDAsync(String sentence, String target, Duration deadline) {
+        return lookup("en_core_web_md", sentence, target, deadline);
+    }
+
+    public CompletableFuture<NerDTO> getSMAsync(String sentence, String target, Duration deadline) {
+        return lookup("en_core_web_sm", sentence, target, deadline);
+    }
+
+    public CompletableFuture<NerDTO> getTRFAsync(String sentence, String target, Duration deadline) {
+        return lookup("en_core_web_trf", sentence, target, deadline);
+    }
+
+    public List<NerDTO> getBatchLG(List<NerItemDTO> items) {
+        return join(getBatchLGAsync(items));
+    }
+
+    public List<NerDTO> getBatchMD(List<NerItemDTO> items) {
+        return join(getBatchMDAsync(items));
+    }
+
+    public List<NerDTO> getBatchSM(List<NerItemDTO> items) {
+        return join(getBatchSMAsync(items));
+    }
+
+    public List<NerDTO> getBatchTRF(List<NerItemDTO> items) {
+        return join(getBatchTRFAsync(items));
+    }
+
+    /**
+     * @see #getBatchAsync(String, List, int)
+     */
+    public List<NerDTO> getBatch(String model, List<NerItemDTO> items, int batchSize) {
+        return join(getBatchAsync(model, items, batchSize));
+    }
+
+    public CompletableFuture<List<NerDTO>> getBatchLGAsync(List<NerItemDTO> items) {
+        return getBatchAsync("en_core_web_lg", items);
+    }
+
+    public CompletableFuture<List<NerDTO>> getBatchMDAsync(List<NerItemDTO> items) {
+        return getBatchAsync("en_core_web_md", items);
+    }
+
+    public CompletableFuture<List<NerDTO>> getBatchSMAsync(List<NerItemDTO> items) {
+        return getBatchAsync("en_core_web_sm", items);
+    }
+
+    public CompletableFuture<List<NerDTO>> getBatchTRFAsync(List<NerItemDTO> items) {
+        return getBatchAsync("en_core_web_trf", items, SpacyUtilities.getBatchSize("TRF"));
+    }
+
+    public CompletableFuture<List<NerDTO>> getBatchAsync(String model, List<NerItemDTO> items) {
+        return getBatchAsync(model, items, SpacyUtilities.getBatchSize());
+    }
+
+    /**
+     * Sends in one call through the transport of the service each sentence of the items that is not in the
+     * {@link EntityCache}, once whatever its number of targets. Python returns all the entities of a sentence,
+     * every target is then answered from their offsets. The results come back with the id of their item.
+     *
+     * @param model     the spaCy model, e.g. {@code en_core_web_lg}.
+     * @param batchSize the {@code batch_size} given to {@code nlp.pipe}.
+     */
+    public CompletableFuture<List<NerDTO>> getBatchAsync(String model, List<NerItemDTO> items, int batchSize) {
+        return getBatchAsync(model, items, batchSize, callTimeout());
+    }
+
+    private CompletableFuture<List<NerDTO>> getBatchAsync(String model, List<NerItemDTO> items, int batchSize,
+                                                          Duration deadline) {
+        if (items.isEmpty()) return CompletableFuture.completedFuture(List.of());
+        Map<String, List<EntityDTO>> known = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (var item : items) {
+            String sentence = sentenceOf(item);
+            if (known.containsKey(sentence)) continue;
+            var ents = ENTITIES.get(cacheModel(model), sentence);
+            if (ents == null) missing.add(sentence);
+            known.put(sentence, ents);
+        }
+        if (missing.isEmpty()) return CompletableFuture.completedFuture(answer(items, known));
+        List<NerItemDTO> request = new ArrayList<>(missing.size());
+        for (int i = 0; i < missing.size(); i++) request.add(new NerItemDTO(i, missing.get(i), null));
+        CallTrace trace = Tracer.start(model);
+        return async(() -> {
+            if (trace == null) return transport.batch(model, request, batchSize);
+            trace.span("java.wait", trace.lap());
+            try {
+                return transport.batch(model, request, batchSize, trace);
+            } finally {
+                trace.lap();
+            }
+        }, deadline).thenApply(results -> {
+            for (var r : results) {
+                List<EntityDTO> ents = r.ents == null ? List.of() : r.ents;
+                String sentence = missing.get(r.id);
+                known.put(sentence, ents);
+                ENTITIES.put(cacheModel(model), sentence, ents);
+            }
+            var answers = answer(items, known);
+            if (trace != null) trace.span("java.match", trace.lap());
+            return answers;
+        }).whenComplete((ignored, error) -> Tracer.finish(trace));
+    }
+
+    /**
+     * @return the model as the {@link EntityCache} knows it, keyed like the pools of {@link SpacyPoolManager}.
+     */
+    private String cacheModel(String model) {
+        return model + "/" + profile;
+    }
+
+    private CompletableFuture<NerDTO> lookup(String model, String sentence, String target, Duration deadline) {
+        return getBatchAsync(model, List.of(new NerItemDTO(0, sentence, target)), 1, deadline)
+                .thenApply(List::getFirst);
+    }
+
+    private static List<NerDTO> answer(List<NerItemDTO> items, Map<String, List<EntityDTO>> known) {
+        List<NerDTO> results = new ArrayList<>(items.size());
+        for (var item : items) {
+            String sentence = sentenceOf(item);
+            var ents = known.get(sentence);
+            if (ents == null) throw new IllegalStateException("Python returned no result for item " + item.id);
+            var dto = new NerDTO();
+            dto.id = item.id;
+            dto.ents = ents;
+            dto.labels = EntityCache.labelsFor(sentence, ents, item.target);
+            results.add(dto);
+        }
+        return results;
+    }
+
+    private static String sentenceOf(NerItemDTO item) {
+        return item.sentence == null ? "" : item.sentence;
+    }
+
+    /**
+     * @return the cache of the entities, shared by all the services.
+     */
+    public static EntityCache entityCache() {
+        return ENTITIES;
+    }
+
+    /**
+     * @see WrapperInterface#profileComponents(String, String)
+     */
+    public ProfileDTO profileComponents(String model, List<String> sentences) {
+        var payload = WrapperParsers.writeItems(sentences);
+        return join(async(() -> WrapperParsers.parseProfile(requiredPy().profileComponents(model, payload))));
+    }
 
     private WrapperInterface requiredPy() {
+        if (daemon != null) return daemon.wrapper();
         var ep = gateway.entry();
         if (ep == null || !ep.isPythonRegistered()) {
             throw new IllegalStateException("Python object not registered yet. Ensure Python process is running and spaCy models are loaded.");
@@ -134,27 +598,103 @@ public class SpacyWrapperService implements AutoCloseable {
     }
 
     /**
-     * 3 times retry to support slowness and occasional errors.
+     * Runs a Python call on a virtual thread, at most {@link SpacyUtilities#getMaxInFlight()} of them at once
+     * (each one on its own Py4J connection, calls past their deadline no longer counting), with 3 attempts to
+     * support occasional errors, all within {@link SpacyUtilities#getCallTimeoutMs()}.
+     * Waiting for a permit, for Python, or between two attempts never holds a platform thread.
      */
-    private static <T> T withRetry(Supplier<T> fn) {
-        RuntimeException last = null;
-        for (int i = 0; i < 3; i++) {
-            try {
-                return fn.get();
-            } catch (RuntimeException e) {
-                last = e;
-                try {
-                    Thread.sleep(250L * (i + 1));
-                } catch (InterruptedException ignored) {
-                }
-            }
+    private <T> CompletableFuture<T> async(Supplier<T> fn) {
+        return async(fn, callTimeout());
+    }
+
+    private static Duration callTimeout() {
+        return Duration.ofMillis(SpacyUtilities.getCallTimeoutMs());
+    }
+
+    /**
+     * @param deadline time given to the call, attempts included. Once exceeded the returned future fails with a
+     *                 {@link TimeoutException} right away, even if Python still works on it. Cancelling the future
+     *                 stops the attempts.
+     */
+    private <T> CompletableFuture<T> async(Supplier<T> fn, Duration deadline) {
+        var result = new CompletableFuture<T>();
+        attempt(fn, result, System.nanoTime() + deadline.toNanos(), 0);
+        return result.orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private <T> void attempt(Supplier<T> fn, CompletableFuture<T> result, long deadline, int i) {
+        if (result.isDone()) return;
+        // Waits for a stuck process to be replaced, so retried calls go to the new one
+        ready.thenComposeAsync(ignored -> CompletableFuture.supplyAsync(() -> withPermit(fn, result), CALLS), CALLS)
+                .whenComplete((value, error) -> {
+                    if (error == null) {
+                        result.complete(value);
+                        return;
+                    }
+                    long backoff = 250L * (i + 1);
+                    if (i + 1 >= ATTEMPTS || result.isDone()
+                            || System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff) >= deadline) {
+                        result.completeExceptionally(unwrap(error));
+                        return;
+                    }
+                    CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS, CALLS)
+                            .execute(() -> attempt(fn, result, deadline, i + 1));
+                });
+    }
+
+    private <T> T withPermit(Supplier<T> fn, CompletableFuture<T> result) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a Python connection", e);
+        }
+        long id = callIds.incrementAndGet();
+        var released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) inFlight.release();
+        };
+        // A call given up (deadline, cancellation) frees its slot right away, even if Python is still on it: hung
+        // calls would otherwise hold every slot of the worker. It stays in running, for checkHung to see it.
+        result.whenComplete((value, error) -> release.run());
+        try {
+            // Given up while waiting for the permit
+            if (result.isDone()) throw new CancellationException();
+            running.put(id, System.nanoTime());
+            return fn.get();
+        } finally {
+            running.remove(id);
+            release.run();
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            var cause = unwrap(e);
+            if (cause instanceof RuntimeException re) throw re;
+            throw new RuntimeException(cause);
         }
-        throw last;
     }
 
     @Override
     public synchronized void close() {
         if (!started) return;
+        if (watchdog != null) watchdog.cancel(false);
+        if (daemon != null) {
+            daemon.close();
+            started = false;
+            return;
+        }
+        try {
+            transport.close();
+        } catch (Exception ignored) {
+        }
         try {
             python.stop();
         } catch (Exception ignored) {
@@ -2,16 +2,36 @@ package udem.taln.wrapper;
 
 import py4j.GatewayServer;
 
+import java.net.InetAddress;
+
 public class WrapperGatewayServer {
+    private final int javaPort;
+    private final int pythonPort;
     private GatewayServer gateway;
     private EntryPoint entry;
 
+    public WrapperGatewayServer() {
+        this(GatewayServer.DEFAULT_PORT, GatewayServer.DEFAULT_PYTHON_PORT); // ports par défaut: 25333 / 25334
+    }
+
+    /**
+     * @param javaPort   port on which Python reaches the gateway.
+     * @param pythonPort port of the Python callback server, used by Java to call the registered object.
+     */
+    public WrapperGatewayServer(int javaPort, int pythonPort) {
+        this.javaPort = javaPort;
+        this.pythonPort = pythonPort;
+    }
+
     public void start() {
         if (gateway != null) return;
         entry = new EntryPoint();
-        gateway = new GatewayServer(entry); // port par défaut: 25333
+        gateway = new GatewayServer.GatewayServerBuilder(entry)
+                .javaPort(javaPort)
+                .callbackClient(pythonPort, InetAddress.getLoopbackAddress())
+                .build();
         gateway.start();
-        System.out.println("[Py4J] GatewayServer started on port " + gateway.getPort());
+        System.out.println("[Py4J] GatewayServer started on port " + gateway.getPort() + " (callback " + pythonPort + ")");
     }
 
     public void stop() {
@@ -25,4 +45,12 @@ public class WrapperGatewayServer {
     public EntryPoint entry() {
         return entry;
     }
-}
\ No newline at end of file
+
+    public int getJavaPort() {
+        return javaPort;
+    }
+
+    public int getPythonPort() {
+        return pythonPort;
+    }
+}
@@ -13,5 +13,42 @@ public interface WrapperInterface {
     String processMD(String sentence, String target);
     String processSM(String sentence);
     String processSM(String sentence, String target);
-//    String processTRF(String sentence);
+    String processTRF(String sentence);
+    String processTRF(String sentence, String target);
+
+    /**
+     * Processes a whole batch of sentences with {@code nlp.pipe}.
+     * Items are passed as one JSON string rather than a Java list, so the batch costs a single Py4J round trip.
+     *
+     * @param items     JSON array of {@code {"id", "sentence", "target"}} objects.
+     * @param batchSize the {@code batch_size} given to {@code nlp.pipe}.
+     * @return a JSON array of {@code {"id", "labels"}} objects, keyed by the ids of the items.
+     */
+    String processBatchLG(String items, int batchSize);
+    String processBatchMD(String items, int batchSize);
+    String processBatchSM(String items, int batchSize);
+
+    /**
+     * Same as the model specific batch methods, for any model this process serves.
+     *
+     * @param model the spaCy model, e.g. {@code en_core_web_lg}.
+     */
+    String processBatch(String model, String items, int batchSize);
+
+    /**
+     * Same as {@link #processBatch(String, String, int)}, tagged with the trace id of the Java call.
+     *
+     * @return {@code {"trace", "timing": {"receive", "queue", "model", "serialize"} in ms, "results"}}.
+     */
+    String processBatchTraced(String model, String items, int batchSize, String traceId);
+
+    /**
+     * Times each component of the full pipeline of a model on some sentences, to see what the excluded ones cost.
+     * The full pipeline is only loaded for the measure.
+     *
+     * @param model     the spaCy model, e.g. {@code en_core_web_lg}.
+     * @param sentences JSON array of sentences.
+     * @return a JSON object matching {@link udem.taln.wrapper.dto.ProfileDTO}.
+     */
+    String profileComponents(String model, String sentences);
 }
@@ -0,0 +1,91 @@
+package udem.taln.wrapper.bulk;
+
+import udem.taln.wrapper.dto.NerDTO;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.transport.LabelCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory-mapped files exchanged with {@code wrapper_bulk.py}, all ints being big-endian.
+ * <pre>
+ * corpus  : int magic | int count | count x (int id | int sentenceLength | sentence | int targetLength | target)
+ * results : int magic | int count | int width | count x (int id | byte labelCount | width x byte code)
+ * </pre>
+ * Results are fixed-width and in corpus order, labels past {@code width} being dropped.
+ */
+public final class MappedCorpus {
+    static final int CORPUS_MAGIC = 0x54414C4E; // TALN
+    static final int RESULTS_MAGIC = 0x54414C52; // TALR
+
+    private MappedCorpus() {
+    }
+
+    /**
+     * Writes the items to {@code file}, replacing it.
+     */
+    public static void writeCorpus(Path file, List<NerItemDTO> items) throws IOException {
+        List<byte[]> strings = new ArrayList<>(items.size() * 2);
+        long size = 8;
+        for (var item : items) {
+            byte[] sentence = item.sentence == null ? new byte[0] : item.sentence.getBytes(StandardCharsets.UTF_8);
+            byte[] target = item.target == null ? new byte[0] : item.target.getBytes(StandardCharsets.UTF_8);
+            strings.add(sentence);
+            strings.add(target);
+            size += 12 + sentence.length + target.length;
+        }
+        if (size > Integer.MAX_VALUE) throw new IOException("Corpus too large for a single mapping: " + size + " bytes");
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.putInt(CORPUS_MAGIC);
+            buf.putInt(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                buf.putInt(items.get(i).id);
+                byte[] sentence = strings.get(2 * i);
+                byte[] target = strings.get(2 * i + 1);
+                buf.putInt(sentence.length);
+                buf.put(sentence);
+                buf.putInt(target.length);
+                buf.put(target);
+            }
+            buf.force();
+        }
+    }
+
+    /**
+     * Maps the results written by Python.
+     */
+    public static List<NerDTO> readResults(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return decodeResults(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    static List<NerDTO> decodeResults(ByteBuffer buf) throws IOException {
+        if (buf.getInt() != RESULTS_MAGIC) throw new IOException("Not a spaCy results file");
+        int count = buf.getInt();
+        int width = buf.getInt();
+        int record = 4 + 1 + width;
+        List<NerDTO> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int at = 12 + i * record;
+            var dto = new NerDTO();
+            dto.id = buf.getInt(at);
+            int labels = Math.min(width, Byte.toUnsignedInt(buf.get(at + 4)));
+            dto.labels = new ArrayList<>(labels);
+            for (int j = 0; j < labels; j++) dto.labels.add(LabelCodec.decode(Byte.toUnsignedInt(buf.get(at + 5 + j))));
+            results.add(dto);
+        }
+        return results;
+    }
+}
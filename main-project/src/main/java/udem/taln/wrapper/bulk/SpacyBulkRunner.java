@@ -0,0 +1,94 @@
+package udem.taln.wrapper.bulk;
+
+import udem.taln.wrapper.PipelineProfile;
+import udem.taln.wrapper.PythonLauncher;
+import udem.taln.wrapper.dto.NerDTO;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.utils.SpacyUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Offline mode for whole corpora: no gateway and no call per sentence, the corpus is handed to a one-shot Python
+ * process through a mapped file and read back the same way.
+ */
+public class SpacyBulkRunner {
+    private final String pythonCmd;
+    private final File scriptFile;
+
+    public SpacyBulkRunner(String pythonCmd, File scriptFile) {
+        this.pythonCmd = pythonCmd;
+        this.scriptFile = scriptFile;
+    }
+
+    public SpacyBulkRunner() {
+        this(PythonLauncher.defaultPythonCmd(), new File("spacy-wrapper/wrapper/wrapper_bulk.py"));
+    }
+
+    /**
+     * @param model     the spaCy model, e.g. {@code en_core_web_lg}.
+     * @param profile   the components to load.
+     * @param items     the whole corpus.
+     * @param batchSize the {@code batch_size} given to {@code nlp.pipe}.
+     * @return one result per item, in corpus order.
+     */
+    public List<NerDTO> run(String model, PipelineProfile profile, List<NerItemDTO> items, int batchSize) throws IOException {
+        Path dir = Files.createTempDirectory("taln-spacy-bulk");
+        Path corpus = dir.resolve("corpus.bin");
+        Path results = dir.resolve("results.bin");
+        int processes = SpacyUtilities.getBulkProcesses();
+        var python = new PythonLauncher(pythonCmd, scriptFile, List.of(
+                "--model", model,
+                "--input", corpus.toString(),
+                "--output", results.toString(),
+                "--processes", String.valueOf(processes),
+                "--batch-size", String.valueOf(batchSize),
+                "--width", String.valueOf(SpacyUtilities.getBulkLabelWidth()),
+                "--exclude", String.join(",", profile.exclude())));
+        // n_process workers share the cores, their native pools must not each take all of them
+        python.setThreads(Math.max(1, Runtime.getRuntime().availableProcessors() / processes));
+        try {
+            long start = System.nanoTime();
+            MappedCorpus.writeCorpus(corpus, items);
+            python.start();
+            int code = python.onExit().get(SpacyUtilities.getBulkTimeoutMs(), TimeUnit.MILLISECONDS);
+            if (code != 0) throw new IOException("Bulk spaCy run of " + model + " exited with code " + code);
+            var out = MappedCorpus.readResults(results);
+            System.out.println("[SpacyBulkRunner] " + model + ": " + items.size() + " sentences in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            return out;
+        } catch (TimeoutException e) {
+            throw new IOException("Bulk spaCy run of " + model + " timed out", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Bulk spaCy run of " + model + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the bulk spaCy run of " + model, e);
+        } finally {
+            python.stop();
+            delete(dir, corpus, results);
+        }
+    }
+
+    /**
+     * Deletes the files, then their directory. A mapping is only released once its buffer is collected, and a file
+     * still mapped cannot be deleted on every platform: it is then left to the exit of the JVM.
+     */
+    private static void delete(Path dir, Path... files) {
+        try {
+            for (Path p : files) Files.deleteIfExists(p);
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            // Deleted on exit in the reverse order of registration, the directory last
+            dir.toFile().deleteOnExit();
+            for (Path p : files) p.toFile().deleteOnExit();
+        }
+    }
+}
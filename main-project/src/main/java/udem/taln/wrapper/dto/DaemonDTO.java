@@ -0,0 +1,16 @@
+package udem.taln.wrapper.dto;
+
+import java.util.List;
+
+/**
+ * Registry entry a wrapper daemon writes to announce itself.
+ */
+public class DaemonDTO {
+    public int port;
+    public long pid;
+    public List<String> models;
+    public List<String> exclude;
+    public String uds;
+    // Py4J auth token of the daemon
+    public String authToken;
+}
@@ -0,0 +1,19 @@
+package udem.taln.wrapper.dto;
+
+/**
+ * One entity of a sentence, its offsets counting code points as Python does ({@code start_char}, {@code end_char}).
+ */
+public class EntityDTO {
+    public String label;
+    public int start;
+    public int end;
+
+    public EntityDTO() {
+    }
+
+    public EntityDTO(String label, int start, int end) {
+        this.label = label;
+        this.start = start;
+        this.end = end;
+    }
+}
@@ -5,4 +5,6 @@ import java.util.List;
 public class NerDTO {
     public int id;
     public List<String> labels;
+    // All the entities of the sentence, whatever the target, only filled by batches
+    public List<EntityDTO> ents;
 }
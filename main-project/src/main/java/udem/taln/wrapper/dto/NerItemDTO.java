@@ -0,0 +1,19 @@
+package udem.taln.wrapper.dto;
+
+/**
+ * One entry of a batch sent to the wrapper.
+ */
+public class NerItemDTO {
+    public int id;
+    public String sentence;
+    public String target;
+
+    public NerItemDTO() {
+    }
+
+    public NerItemDTO(int id, String sentence, String target) {
+        this.id = id;
+        this.sentence = sentence;
+        this.target = target;
+    }
+}
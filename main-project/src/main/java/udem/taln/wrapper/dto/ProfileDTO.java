@@ -0,0 +1,28 @@
+package udem.taln.wrapper.dto;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Time spent per component of a full spaCy pipeline, in ms per document.
+ */
+public class ProfileDTO {
+    public String model;
+    public int docs;
+    public Map<String, Double> components;
+    public List<String> excluded;
+    public double savedMs;
+    public double totalMs;
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "== Pipeline profile of %s (%d docs) ==%n", model, docs));
+        components.forEach((name, ms) -> sb.append(String.format(Locale.ROOT, "%-16s %8.3f ms/doc%s%n",
+                name, ms, excluded.contains(name) ? "  (excluded)" : "")));
+        sb.append(String.format(Locale.ROOT, "Saved: %.3f of %.3f ms/doc (%.1f%%)%n",
+                savedMs, totalMs, totalMs == 0 ? 0.0 : 100 * savedMs / totalMs));
+        return sb.toString();
+    }
+}
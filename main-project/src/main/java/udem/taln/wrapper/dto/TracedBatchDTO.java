@@ -0,0 +1,13 @@
+package udem.taln.wrapper.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of a traced batch, with the time Python spent in each stage of the call, in ms.
+ */
+public class TracedBatchDTO {
+    public String trace;
+    public Map<String, Double> timing;
+    public List<NerDTO> results;
+}
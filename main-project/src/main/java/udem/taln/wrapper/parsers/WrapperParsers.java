@@ -1,8 +1,14 @@
 package udem.taln.wrapper.parsers;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import udem.taln.wrapper.dto.DaemonDTO;
 import udem.taln.wrapper.dto.NerDTO;
+import udem.taln.wrapper.dto.ProfileDTO;
+import udem.taln.wrapper.dto.TracedBatchDTO;
+
+import java.util.List;
 
 public class WrapperParsers {
 
@@ -15,4 +21,45 @@ public class WrapperParsers {
             throw new RuntimeException(e);
         }
     }
+
+    public static List<NerDTO> parseNERBatch(String json) {
+        try {
+            return MAPPER.readValue(json, new TypeReference<>() {
+            });
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static TracedBatchDTO parseTracedBatch(String json) {
+        try {
+            return MAPPER.readValue(json, TracedBatchDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static ProfileDTO parseProfile(String json) {
+        try {
+            return MAPPER.readValue(json, ProfileDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static DaemonDTO parseDaemon(String json) {
+        try {
+            return MAPPER.readValue(json, DaemonDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static String writeItems(List<?> items) {
+        try {
+            return MAPPER.writeValueAsString(items);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -0,0 +1,80 @@
+package udem.taln.wrapper.trace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Spans of one call to a spaCy worker, from the Java side down to the Python stages.
+ * The id travels with the call to {@code EndPoint.py}, so both sides can be matched.
+ */
+public final class CallTrace {
+    private final String id;
+    private final String model;
+    private final long start = System.nanoTime();
+    private final Map<String, Long> spans = new LinkedHashMap<>();
+    private long lap = start;
+
+    public CallTrace(String model) {
+        this.id = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        this.model = model;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public String model() {
+        return model;
+    }
+
+    /**
+     * @return time since the call started.
+     */
+    public long elapsedNanos() {
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return time since the previous lap, or since the call started.
+     */
+    public synchronized long lap() {
+        long now = System.nanoTime();
+        long nanos = now - lap;
+        lap = now;
+        return nanos;
+    }
+
+    /**
+     * Adds to the time of a stage, a stage met several times (e.g. retries) adds up.
+     */
+    public synchronized void span(String stage, long nanos) {
+        spans.merge(stage, nanos, Long::sum);
+    }
+
+    public void spanMs(String stage, double ms) {
+        span(stage, (long) (ms * 1_000_000));
+    }
+
+    /**
+     * Splits the round trip of a call into the stages timed by Python, the rest going to {@code ipc}.
+     *
+     * @param roundTripNanos time from the request sent to the response read.
+     * @param timingMs       time of each Python stage, in ms, by stage name.
+     */
+    public void remote(long roundTripNanos, Map<String, Double> timingMs) {
+        long python = 0;
+        if (timingMs != null) {
+            for (var stage : timingMs.entrySet()) {
+                long nanos = (long) (stage.getValue() * 1_000_000);
+                span("python." + stage.getKey(), nanos);
+                python += nanos;
+            }
+        }
+        span("ipc", Math.max(0, roundTripNanos - python));
+    }
+
+    public synchronized Map<String, Long> spans() {
+        return new LinkedHashMap<>(spans);
+    }
+}
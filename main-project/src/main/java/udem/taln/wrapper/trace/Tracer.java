@@ -0,0 +1,136 @@
+package udem.taln.wrapper.trace;
+
+import udem.taln.wrapper.utils.SpacyUtilities;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the spans of the traced calls by stage, and appends each call to {@link SpacyUtilities#getTraceFile()}
+ * when set. Stages:
+ * <ul>
+ *     <li>{@code java.wait}: waiting for a free connection of the worker, or for it to be restarted.</li>
+ *     <li>{@code java.encode}, {@code java.parse}: payload written and read by Java.</li>
+ *     <li>{@code ipc}: the round trip left once the Python stages are taken out (Py4J or socket, marshalling).</li>
+ *     <li>{@code python.receive}, {@code python.queue}, {@code python.model}, {@code python.serialize}: payload read,
+ *     wait for the model lock, {@code nlp.pipe}, results written.</li>
+ *     <li>{@code java.match}: targets answered from the entities.</li>
+ * </ul>
+ * Tracing is off unless {@link SpacyUtilities#isTrace()}.
+ */
+public final class Tracer {
+    private static final boolean ENABLED = SpacyUtilities.isTrace();
+    private static final Map<String, Stage> STAGES = new ConcurrentHashMap<>();
+    private static final LongAdder CALLS = new LongAdder();
+    private static BufferedWriter export;
+
+    /**
+     * @param count      calls that went through the stage.
+     * @param totalNanos time spent in it, all calls together.
+     * @param maxNanos   longest time a call spent in it.
+     */
+    public record StageStats(long count, long totalNanos, long maxNanos) {
+        public double meanMs() {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+    }
+
+    private record Stage(LongAdder count, LongAdder total, LongAccumulator max) {
+        Stage() {
+            this(new LongAdder(), new LongAdder(), new LongAccumulator(Math::max, 0));
+        }
+    }
+
+    private Tracer() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * @return a new trace for a call to the model, {@code null} when tracing is off.
+     */
+    public static CallTrace start(String model) {
+        return ENABLED ? new CallTrace(model) : null;
+    }
+
+    /**
+     * Adds the spans of a finished call to the aggregates, and exports it.
+     */
+    public static void finish(CallTrace trace) {
+        if (trace == null) return;
+        var spans = trace.spans();
+        CALLS.increment();
+        spans.put("total", trace.elapsedNanos());
+        record(spans);
+        export(trace, spans);
+    }
+
+    static void record(Map<String, Long> spans) {
+        for (var span : spans.entrySet()) {
+            var stage = STAGES.computeIfAbsent(span.getKey(), k -> new Stage());
+            stage.count().increment();
+            stage.total().add(span.getValue());
+            stage.max().accumulate(span.getValue());
+        }
+    }
+
+    /**
+     * @return the aggregates of each stage, by stage name.
+     */
+    public static Map<String, StageStats> stages() {
+        Map<String, StageStats> out = new TreeMap<>();
+        STAGES.forEach((name, s) -> out.put(name, new StageStats(s.count().sum(), s.total().sum(), s.max().get())));
+        return out;
+    }
+
+    /**
+     * @return one line per stage: calls, mean and max time, and share of the total time of the calls.
+     */
+    public static String report() {
+        var stages = stages();
+        if (stages.isEmpty()) return "[Tracer] No traced call";
+        long total = stages.containsKey("total") ? stages.get("total").totalNanos() : 0;
+        StringBuilder sb = new StringBuilder("[Tracer] ").append(CALLS.sum()).append(" traced calls");
+        stages.forEach((name, s) -> sb.append(String.format("%n  %-16s n=%-6d mean=%9.2fms max=%9.2fms %5.1f%%",
+                name, s.count(), s.meanMs(), s.maxNanos() / 1e6, total == 0 ? 0 : 100.0 * s.totalNanos() / total)));
+        return sb.toString();
+    }
+
+    static void reset() {
+        STAGES.clear();
+        CALLS.reset();
+    }
+
+    private static synchronized void export(CallTrace trace, Map<String, Long> spans) {
+        Path file = SpacyUtilities.getTraceFile();
+        if (file == null) return;
+        try {
+            if (export == null) {
+                export = Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            StringBuilder line = new StringBuilder("{\"trace\":\"").append(trace.id())
+                    .append("\",\"model\":\"").append(trace.model()).append("\",\"spans_ms\":{");
+            boolean first = true;
+            for (var span : spans.entrySet()) {
+                if (!first) line.append(',');
+                line.append('"').append(span.getKey()).append("\":").append(span.getValue() / 1e6);
+                first = false;
+            }
+            export.write(line.append("}}").toString());
+            export.newLine();
+            export.flush();
+        } catch (IOException e) {
+            System.err.println("[Tracer] Could not export to " + file + ": " + e.getMessage());
+        }
+    }
+}
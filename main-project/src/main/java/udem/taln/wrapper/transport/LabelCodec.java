@@ -0,0 +1,32 @@
+package udem.taln.wrapper.transport;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Int codes of the spaCy (OntoNotes) entity labels, shared with {@code EndPoint.py}.
+ * Code 0 stands for a label outside of this list.
+ */
+public final class LabelCodec {
+    public static final List<String> LABELS = List.of("",
+            "PERSON", "NORP", "FAC", "ORG", "GPE", "LOC", "PRODUCT", "EVENT", "WORK_OF_ART",
+            "LAW", "LANGUAGE", "DATE", "TIME", "PERCENT", "MONEY", "QUANTITY", "ORDINAL", "CARDINAL");
+
+    private static final Map<String, Integer> CODES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < LABELS.size(); i++) CODES.put(LABELS.get(i), i);
+    }
+
+    private LabelCodec() {
+    }
+
+    public static int encode(String label) {
+        return CODES.getOrDefault(label, 0);
+    }
+
+    public static String decode(int code) {
+        return code > 0 && code < LABELS.size() ? LABELS.get(code) : "";
+    }
+}
@@ -0,0 +1,45 @@
+package udem.taln.wrapper.transport;
+
+import udem.taln.wrapper.WrapperInterface;
+import udem.taln.wrapper.dto.NerDTO;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.parsers.WrapperParsers;
+import udem.taln.wrapper.trace.CallTrace;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Batches as a single Py4J call, items and results being JSON strings.
+ */
+public class Py4JTransport implements SpacyTransport {
+    private final Supplier<WrapperInterface> py;
+
+    /**
+     * @param py the registered Python object, looked up on each call.
+     */
+    public Py4JTransport(Supplier<WrapperInterface> py) {
+        this.py = py;
+    }
+
+    @Override
+    public List<NerDTO> batch(String model, List<NerItemDTO> items, int batchSize) {
+        var json = py.get().processBatch(model, WrapperParsers.writeItems(items), batchSize);
+        return WrapperParsers.parseNERBatch(json);
+    }
+
+    @Override
+    public List<NerDTO> batch(String model, List<NerItemDTO> items, int batchSize, CallTrace trace) {
+        if (trace == null) return batch(model, items, batchSize);
+        long start = System.nanoTime();
+        var payload = WrapperParsers.writeItems(items);
+        long sent = System.nanoTime();
+        var json = py.get().processBatchTraced(model, payload, batchSize, trace.id());
+        long received = System.nanoTime();
+        var traced = WrapperParsers.parseTracedBatch(json);
+        trace.span("java.encode", sent - start);
+        trace.remote(received - sent, traced.timing);
+        trace.span("java.parse", System.nanoTime() - received);
+        return traced.results;
+    }
+}
@@ -0,0 +1,46 @@
+package udem.taln.wrapper.transport;
+
+import udem.taln.wrapper.dto.NerDTO;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.trace.CallTrace;
+
+import java.util.List;
+
+/**
+ * How batches reach a Python worker. Calls are blocking, {@link udem.taln.wrapper.SpacyWrapperService} runs them
+ * on virtual threads and handles retries and timeouts.
+ */
+public interface SpacyTransport extends AutoCloseable {
+
+    enum Kind {
+        /**
+         * Py4J call with JSON payloads, the default.
+         */
+        PY4J,
+        /**
+         * Length-prefixed binary frames over a Unix domain socket, labels travelling as int codes.
+         */
+        UDS
+    }
+
+    /**
+     * @param model     the spaCy model, e.g. {@code en_core_web_lg}.
+     * @param items     the sentences to process.
+     * @param batchSize the {@code batch_size} given to {@code nlp.pipe}.
+     * @return one result per item, with the id of its item.
+     */
+    List<NerDTO> batch(String model, List<NerItemDTO> items, int batchSize);
+
+    /**
+     * Same as {@link #batch(String, List, int)}, adding the spans of the call to the trace.
+     *
+     * @param trace the trace of the call, {@code null} when tracing is off.
+     */
+    default List<NerDTO> batch(String model, List<NerItemDTO> items, int batchSize, CallTrace trace) {
+        return batch(model, items, batchSize);
+    }
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,203 @@
+package udem.taln.wrapper.transport;
+
+import udem.taln.wrapper.dto.EntityDTO;
+import udem.taln.wrapper.dto.NerDTO;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.trace.CallTrace;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Batches as length-prefixed binary frames over a Unix domain socket, without Py4J reflection nor JSON.
+ * All ints are big-endian.
+ * <pre>
+ * request  : int length | byte op (1 = batch, 2 = traced batch) | short modelLength | model | int batchSize | int count
+ *            | count x (int id | int sentenceLength | sentence | int targetLength | target)
+ *            | traced : short traceLength | trace id
+ * response : int length | byte status (0 = ok, 1 = error)
+ *            | ok    : [traced : 4 x int micros (receive, queue, model, serialize)]
+ *                      | int count | count x (int id | short entCount
+ *                      | entCount x (byte {@link LabelCodec code} | int start | int end))
+ *            | error : utf-8 message
+ * </pre>
+ * Entity offsets count code points, the labels of a result are those of all its entities.
+ * One connection carries one call at a time, idle connections are kept for the next calls.
+ */
+public class UnixSocketTransport implements SpacyTransport {
+    static final byte OP_BATCH = 1;
+    static final byte OP_BATCH_TRACED = 2;
+    private static final List<String> PYTHON_STAGES = List.of("receive", "queue", "model", "serialize");
+    static final byte STATUS_OK = 0;
+
+    private final UnixDomainSocketAddress address;
+    private final ConcurrentLinkedQueue<SocketChannel> idle = new ConcurrentLinkedQueue<>();
+
+    public UnixSocketTransport(Path socket) {
+        this.address = UnixDomainSocketAddress.of(socket);
+    }
+
+    @Override
+    public List<NerDTO> batch(String model, List<NerItemDTO> items, int batchSize) {
+        return batch(model, items, batchSize, null);
+    }
+
+    @Override
+    public List<NerDTO> batch(String model, List<NerItemDTO> items, int batchSize, CallTrace trace) {
+        SocketChannel channel = null;
+        try {
+            channel = borrow();
+            long start = System.nanoTime();
+            var request = encode(model, items, batchSize, trace == null ? null : trace.id());
+            long sent = System.nanoTime();
+            write(channel, request);
+            var response = read(channel);
+            long received = System.nanoTime();
+            var results = decode(response, trace, received - sent);
+            if (trace != null) {
+                trace.span("java.encode", sent - start);
+                trace.span("java.parse", System.nanoTime() - received);
+            }
+            idle.add(channel);
+            return results;
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new UncheckedIOException("Unix socket call to " + address + " failed", e);
+        } catch (RuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    private SocketChannel borrow() throws IOException {
+        SocketChannel channel;
+        while ((channel = idle.poll()) != null) {
+            if (channel.isOpen()) return channel;
+        }
+        channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(address);
+        return channel;
+    }
+
+    static ByteBuffer encode(String model, List<NerItemDTO> items, int batchSize) {
+        return encode(model, items, batchSize, null);
+    }
+
+    /**
+     * @param traceId sent along the items when not {@code null}, Python then returns the time of its stages.
+     */
+    static ByteBuffer encode(String model, List<NerItemDTO> items, int batchSize, String traceId) {
+        byte[] modelBytes = model.getBytes(StandardCharsets.UTF_8);
+        byte[] traceBytes = traceId == null ? null : traceId.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> strings = new ArrayList<>(items.size() * 2);
+        int size = 4 + 1 + 2 + modelBytes.length + 4 + 4 + (traceBytes == null ? 0 : 2 + traceBytes.length);
+        for (var item : items) {
+            byte[] sentence = item.sentence == null ? new byte[0] : item.sentence.getBytes(StandardCharsets.UTF_8);
+            byte[] target = item.target == null ? new byte[0] : item.target.getBytes(StandardCharsets.UTF_8);
+            strings.add(sentence);
+            strings.add(target);
+            size += 4 + 4 + sentence.length + 4 + target.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(size - 4);
+        buf.put(traceBytes == null ? OP_BATCH : OP_BATCH_TRACED);
+        buf.putShort((short) modelBytes.length);
+        buf.put(modelBytes);
+        buf.putInt(batchSize);
+        buf.putInt(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            buf.putInt(items.get(i).id);
+            byte[] sentence = strings.get(2 * i);
+            byte[] target = strings.get(2 * i + 1);
+            buf.putInt(sentence.length);
+            buf.put(sentence);
+            buf.putInt(target.length);
+            buf.put(target);
+        }
+        if (traceBytes != null) {
+            buf.putShort((short) traceBytes.length);
+            buf.put(traceBytes);
+        }
+        return buf.flip();
+    }
+
+    static List<NerDTO> decode(ByteBuffer body) {
+        return decode(body, null, 0);
+    }
+
+    /**
+     * @param trace          the trace of a traced batch, its response then starts with the time of the Python stages.
+     * @param roundTripNanos time from the request sent to the response read.
+     */
+    static List<NerDTO> decode(ByteBuffer body, CallTrace trace, long roundTripNanos) {
+        byte status = body.get();
+        if (status != STATUS_OK) {
+            byte[] message = new byte[body.remaining()];
+            body.get(message);
+            throw new IllegalStateException("Python failed: " + new String(message, StandardCharsets.UTF_8));
+        }
+        if (trace != null) {
+            Map<String, Double> timing = new LinkedHashMap<>();
+            for (String stage : PYTHON_STAGES) timing.put(stage, body.getInt() / 1000.0);
+            trace.remote(roundTripNanos, timing);
+        }
+        int count = body.getInt();
+        List<NerDTO> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            var dto = new NerDTO();
+            dto.id = body.getInt();
+            int ents = Short.toUnsignedInt(body.getShort());
+            dto.labels = new ArrayList<>(ents);
+            dto.ents = new ArrayList<>(ents);
+            for (int j = 0; j < ents; j++) {
+                String label = LabelCodec.decode(Byte.toUnsignedInt(body.get()));
+                dto.labels.add(label);
+                dto.ents.add(new EntityDTO(label, body.getInt(), body.getInt()));
+            }
+            results.add(dto);
+        }
+        return results;
+    }
+
+    private static void write(SocketChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) channel.write(buf);
+    }
+
+    private static ByteBuffer read(SocketChannel channel) throws IOException {
+        ByteBuffer header = readFully(channel, ByteBuffer.allocate(4));
+        return readFully(channel, ByteBuffer.allocate(header.getInt()));
+    }
+
+    private static ByteBuffer readFully(SocketChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) throw new EOFException("Python closed the connection");
+        }
+        return buf.flip();
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public void close() {
+        SocketChannel channel;
+        while ((channel = idle.poll()) != null) closeQuietly(channel);
+    }
+}
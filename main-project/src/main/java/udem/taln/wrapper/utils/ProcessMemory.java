@@ -0,0 +1,55 @@
+package udem.taln.wrapper.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.OptionalLong;
+
+/**
+ * Resident memory of a process, read from {@code /proc} (Linux only, empty elsewhere).
+ */
+public final class ProcessMemory {
+
+    private ProcessMemory() {
+    }
+
+    /**
+     * Proportional set size when the kernel gives it, so pages a forked worker shares with its parent are only counted
+     * for their share, else the resident set size.
+     *
+     * @return the memory of the process in bytes, empty if unknown or if the process is gone.
+     */
+    public static OptionalLong residentBytes(long pid) {
+        if (ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+            var pss = read(Path.of("/proc", String.valueOf(pid), "smaps_rollup"), "Pss:");
+            if (pss.isPresent()) return pss;
+            return read(Path.of("/proc", String.valueOf(pid), "status"), "VmRSS:");
+        }
+        return OptionalLong.empty();
+    }
+
+    private static OptionalLong read(Path file, String field) {
+        try {
+            return parseKb(Files.readString(file), field);
+        } catch (IOException | SecurityException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    /**
+     * @param content content of a {@code /proc} file with {@code Field:   123 kB} lines.
+     * @return the value of the field in bytes.
+     */
+    static OptionalLong parseKb(String content, String field) {
+        for (String line : content.split("\n")) {
+            if (!line.startsWith(field)) continue;
+            String[] parts = line.substring(field.length()).trim().split("\\s+");
+            try {
+                return OptionalLong.of(Long.parseLong(parts[0]) * 1024);
+            } catch (NumberFormatException e) {
+                return OptionalLong.empty();
+            }
+        }
+        return OptionalLong.empty();
+    }
+}
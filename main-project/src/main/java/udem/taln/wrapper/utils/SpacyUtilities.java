@@ -0,0 +1,377 @@
+package udem.taln.wrapper.utils;
+
+import udem.taln.wrapper.PipelineProfile;
+import udem.taln.wrapper.transport.SpacyTransport;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Settings of the spaCy wrapper, read from env vars first then from config.properties.
+ */
+public class SpacyUtilities {
+
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final int DEFAULT_ITEMS_PER_CALL = 2048;
+    private static final int DEFAULT_MIN_WORKERS = 0;
+    private static final int DEFAULT_MAX_WORKERS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static final int DEFAULT_BASE_PORT = 25333;
+    private static final int DEFAULT_RESERVED_CORES = 1;
+    private static final int DEFAULT_SCALE_UP_QUEUE_PER_WORKER = 2;
+    private static final long DEFAULT_TARGET_LATENCY_MS = 5_000L;
+    private static final long DEFAULT_IDLE_TIMEOUT_MS = 60_000L;
+    private static final long DEFAULT_SCALE_INTERVAL_MS = 1_000L;
+    private static final long DEFAULT_REGISTRATION_TIMEOUT_MS = 30_000L;
+    private static final long DEFAULT_MODEL_LOAD_TIMEOUT_MS = 180_000L;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 2;
+    private static final long DEFAULT_CALL_TIMEOUT_MS = 120_000L;
+    private static final long DEFAULT_HUNG_TIMEOUT_MS = 120_000L;
+    private static final int DEFAULT_ENTITY_CACHE_SIZE = 10_000;
+    private static final long DEFAULT_COALESCE_WINDOW_MS = 5L;
+    private static final long DEFAULT_COALESCE_TARGET_MS = 50L;
+    private static final long DEFAULT_MEMORY_SAMPLE_MS = 10_000L;
+    private static final long DEFAULT_DAEMON_IDLE_TIMEOUT_MS = 600_000L;
+    private static final long DEFAULT_DAEMON_LEASE_TTL_MS = 30_000L;
+    private static final int DEFAULT_BULK_THRESHOLD = 500_000;
+    private static final int DEFAULT_BULK_LABEL_WIDTH = 16;
+    private static final long DEFAULT_BULK_TIMEOUT_MS = 6 * 3_600_000L;
+
+    /**
+     * @return the {@code batch_size} given to {@code nlp.pipe}.
+     */
+    public static int getBatchSize() {
+        return getInt("SPACY_BATCH_SIZE", DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param mode name of a NER mode, e.g. {@code TRF}.
+     * @return the batch size set for this mode ({@code SPACY_BATCH_SIZE_TRF}), else {@link #getBatchSize()}.
+     */
+    public static int getBatchSize(String mode) {
+        return Math.max(1, getInt("SPACY_BATCH_SIZE_" + mode.toUpperCase(Locale.ROOT), getBatchSize()));
+    }
+
+    /**
+     * @return how many sentences are sent to Python in a single call.
+     */
+    public static int getItemsPerCall() {
+        return getInt("SPACY_ITEMS_PER_CALL", DEFAULT_ITEMS_PER_CALL);
+    }
+
+    /**
+     * @param mode name of a NER mode, e.g. {@code TRF}.
+     * @return the items per call set for this mode ({@code SPACY_ITEMS_PER_CALL_TRF}), else {@link #getItemsPerCall()}.
+     */
+    public static int getItemsPerCall(String mode) {
+        return Math.max(1, getInt("SPACY_ITEMS_PER_CALL_" + mode.toUpperCase(Locale.ROOT), getItemsPerCall()));
+    }
+
+    /**
+     * @return threads of each Python process (torch, OpenMP, MKL, BLAS), by default the cores left by the JVM shared
+     * between the workers of a model.
+     */
+    public static int getTorchThreads() {
+        return getTorchThreads(getMaxWorkers());
+    }
+
+    /**
+     * @param workers workers that may run side by side, those of every pool.
+     * @return threads of each Python process, by default the cores left by the JVM shared between these workers.
+     */
+    public static int getTorchThreads(int workers) {
+        int val = getInt("SPACY_TORCH_THREADS", 0);
+        int cores = Runtime.getRuntime().availableProcessors();
+        return val > 0 ? val : Math.max(1, (cores - Math.min(getReservedCores(), cores - 1)) / Math.max(1, workers));
+    }
+
+    /**
+     * @return cores left to the JVM, workers are placed on the others.
+     */
+    public static int getReservedCores() {
+        return Math.max(0, getInt("SPACY_RESERVED_CORES", DEFAULT_RESERVED_CORES));
+    }
+
+    /**
+     * @return whether each worker is pinned to its own cores, see {@code CpuPlacement}.
+     */
+    public static boolean isCpuAffinity() {
+        String val = lookup("SPACY_CPU_AFFINITY");
+        return val != null && Boolean.parseBoolean(val.trim());
+    }
+
+    /**
+     * @return workers kept alive per model once it has been used, even when idle.
+     */
+    public static int getMinWorkers() {
+        return Math.max(0, getInt("SPACY_MIN_WORKERS", DEFAULT_MIN_WORKERS));
+    }
+
+    /**
+     * @return maximum number of Python processes per model.
+     */
+    public static int getMaxWorkers() {
+        return Math.max(1, getInt("SPACY_MAX_WORKERS", DEFAULT_MAX_WORKERS));
+    }
+
+    /**
+     * @return queued calls per worker above which a pool grows.
+     */
+    public static int getScaleUpQueuePerWorker() {
+        return Math.max(1, getInt("SPACY_SCALE_UP_QUEUE_PER_WORKER", DEFAULT_SCALE_UP_QUEUE_PER_WORKER));
+    }
+
+    /**
+     * @return queue + processing time of a call above which a pool grows.
+     */
+    public static long getTargetLatencyMs() {
+        return getLong("SPACY_TARGET_LATENCY_MS", DEFAULT_TARGET_LATENCY_MS);
+    }
+
+    /**
+     * @return idle time after which a worker is stopped.
+     */
+    public static long getIdleTimeoutMs() {
+        return getLong("SPACY_IDLE_TIMEOUT_MS", DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    /**
+     * @return period of the autoscaling checks.
+     */
+    public static long getScaleIntervalMs() {
+        return Math.max(50, getLong("SPACY_SCALE_INTERVAL_MS", DEFAULT_SCALE_INTERVAL_MS));
+    }
+
+    /**
+     * @param mode name of a NER mode, e.g. {@code LG}.
+     * @return the profile set for this mode ({@code SPACY_PIPELINE_PROFILE_LG}), else the global one
+     * ({@code SPACY_PIPELINE_PROFILE}), else {@link PipelineProfile#NER_ONLY}.
+     */
+    public static PipelineProfile getPipelineProfile(String mode) {
+        String val = lookup("SPACY_PIPELINE_PROFILE_" + mode.toUpperCase(Locale.ROOT));
+        if (val == null) val = lookup("SPACY_PIPELINE_PROFILE");
+        if (val != null) {
+            try {
+                return PipelineProfile.valueOf(val.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        return PipelineProfile.NER_ONLY;
+    }
+
+    /**
+     * @return how batches reach the Python workers, {@code PY4J} (default) or {@code UDS}.
+     */
+    public static SpacyTransport.Kind getTransport() {
+        String val = lookup("SPACY_TRANSPORT");
+        if (val != null) {
+            try {
+                return SpacyTransport.Kind.valueOf(val.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        return SpacyTransport.Kind.PY4J;
+    }
+
+    /**
+     * @return whether each call to a worker is traced, stage by stage, see {@link udem.taln.wrapper.trace.Tracer}.
+     */
+    public static boolean isTrace() {
+        return Boolean.parseBoolean(lookup("SPACY_TRACE"));
+    }
+
+    /**
+     * @return the file each traced call is appended to as a JSON line, {@code null} to only aggregate them.
+     */
+    public static Path getTraceFile() {
+        String val = lookup("SPACY_TRACE_FILE");
+        return val != null ? Path.of(val.trim()) : null;
+    }
+
+    /**
+     * @return whether the time per component of the full pipeline is measured and printed on the first execution.
+     */
+    public static boolean isProfileReport() {
+        return Boolean.parseBoolean(lookup("SPACY_PROFILE_REPORT"));
+    }
+
+    /**
+     * @return time given to a Python process to register once started.
+     */
+    public static long getRegistrationTimeoutMs() {
+        return getLong("SPACY_REGISTRATION_TIMEOUT_MS", DEFAULT_REGISTRATION_TIMEOUT_MS);
+    }
+
+    /**
+     * @return time given to a Python process to load a model.
+     */
+    public static long getModelLoadTimeoutMs() {
+        return getLong("SPACY_MODEL_LOAD_TIMEOUT_MS", DEFAULT_MODEL_LOAD_TIMEOUT_MS);
+    }
+
+    /**
+     * @return calls a single Python process may have in flight at once, each one on its own Py4J connection.
+     */
+    public static int getMaxInFlight() {
+        return Math.max(1, getInt("SPACY_MAX_IN_FLIGHT", DEFAULT_MAX_IN_FLIGHT));
+    }
+
+    /**
+     * @return default deadline of a call to Python, retries included.
+     */
+    public static long getCallTimeoutMs() {
+        return getLong("SPACY_CALL_TIMEOUT_MS", DEFAULT_CALL_TIMEOUT_MS);
+    }
+
+    /**
+     * @return time after which a Python call still running means its process is stuck, and is replaced.
+     */
+    public static long getHungTimeoutMs() {
+        return Math.max(1_000L, getLong("SPACY_HUNG_TIMEOUT_MS", DEFAULT_HUNG_TIMEOUT_MS));
+    }
+
+    /**
+     * @return longest time small requests wait to be batched with those of other callers, 0 to send them alone.
+     */
+    public static long getCoalesceWindowMs() {
+        return Math.max(0, getLong("SPACY_COALESCE_WINDOW_MS", DEFAULT_COALESCE_WINDOW_MS));
+    }
+
+    /**
+     * @return latency aimed at for a coalesced request, waiting included; the window shrinks as calls get slower.
+     */
+    public static long getCoalesceTargetMs() {
+        return Math.max(1, getLong("SPACY_COALESCE_TARGET_MS", DEFAULT_COALESCE_TARGET_MS));
+    }
+
+    /**
+     * @return sentences whose entities are kept on the Java side, by model, 0 to disable the cache.
+     */
+    public static int getEntityCacheSize() {
+        return Math.max(0, getInt("SPACY_ENTITY_CACHE_SIZE", DEFAULT_ENTITY_CACHE_SIZE));
+    }
+
+    /**
+     * @return memory a worker may use before it is recycled, in MB, 0 for no ceiling.
+     */
+    public static long getMaxResidentMb() {
+        return Math.max(0, getLong("SPACY_MAX_RSS_MB", 0));
+    }
+
+    /**
+     * @return period of the worker memory samples.
+     */
+    public static long getMemorySampleMs() {
+        return Math.max(1_000L, getLong("SPACY_MEMORY_SAMPLE_MS", DEFAULT_MEMORY_SAMPLE_MS));
+    }
+
+    /**
+     * @return whether workers attach to persistent daemons, kept across runs, instead of launching their own Python.
+     */
+    public static boolean isDaemonMode() {
+        return Boolean.parseBoolean(lookup("SPACY_DAEMON"));
+    }
+
+    /**
+     * @return whether the workers of a model are forked from a parent that loaded it once, sharing its memory.
+     */
+    public static boolean isForkWorkers() {
+        return Boolean.parseBoolean(lookup("SPACY_FORK_WORKERS"));
+    }
+
+    /**
+     * @return time a daemon stays alive once no JVM holds a lease on it.
+     */
+    public static long getDaemonIdleTimeoutMs() {
+        return getLong("SPACY_DAEMON_IDLE_TIMEOUT_MS", DEFAULT_DAEMON_IDLE_TIMEOUT_MS);
+    }
+
+    /**
+     * @return lifetime of a lease, renewed every third of it while the JVM runs.
+     */
+    public static long getDaemonLeaseTtlMs() {
+        return Math.max(1_000L, getLong("SPACY_DAEMON_LEASE_TTL_MS", DEFAULT_DAEMON_LEASE_TTL_MS));
+    }
+
+    /**
+     * @return the directory where daemons announce themselves.
+     */
+    public static Path getDaemonRegistry() {
+        String val = lookup("SPACY_DAEMON_REGISTRY");
+        return val != null ? Path.of(val.trim()) : Path.of(System.getProperty("java.io.tmpdir"), "taln-spacy-daemons");
+    }
+
+    /**
+     * @return sentences from which an execution goes through the offline bulk mode instead of the workers,
+     * 0 turning the bulk mode off.
+     */
+    public static int getBulkThreshold() {
+        return Math.max(0, getInt("SPACY_BULK_THRESHOLD", DEFAULT_BULK_THRESHOLD));
+    }
+
+    /**
+     * @return the {@code n_process} given to {@code nlp.pipe} in bulk mode.
+     */
+    public static int getBulkProcesses() {
+        return Math.max(1, getInt("SPACY_BULK_PROCESSES", getMaxWorkers()));
+    }
+
+    /**
+     * @return labels kept per sentence in bulk mode, the width of a result record.
+     */
+    public static int getBulkLabelWidth() {
+        return Math.clamp(getInt("SPACY_BULK_LABEL_WIDTH", DEFAULT_BULK_LABEL_WIDTH), 1, 255);
+    }
+
+    /**
+     * @return time given to a whole bulk run.
+     */
+    public static long getBulkTimeoutMs() {
+        return getLong("SPACY_BULK_TIMEOUT_MS", DEFAULT_BULK_TIMEOUT_MS);
+    }
+
+    /**
+     * @return the gateway port of the first worker slot, slot {@code i} using {@code base + 2i} and {@code base + 2i + 1}.
+     */
+    public static int getBasePort() {
+        return getInt("SPACY_BASE_PORT", DEFAULT_BASE_PORT);
+    }
+
+    static int getInt(String key, int defaultValue) {
+        String val = lookup(key);
+        if (val != null) {
+            try {
+                return Integer.parseInt(val.trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return defaultValue;
+    }
+
+    static long getLong(String key, long defaultValue) {
+        String val = lookup(key);
+        if (val != null) {
+            try {
+                return Long.parseLong(val.trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return defaultValue;
+    }
+
+    static String lookup(String key) {
+        String env = System.getenv(key);
+        if (env != null && !env.isBlank()) return env;
+        try (InputStream is = SpacyUtilities.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (is != null) {
+                Properties p = new Properties();
+                p.load(is);
+                String val = p.getProperty(key);
+                if (val != null && !val.isBlank()) return val;
+            }
+        } catch (Exception ignored) {
+        }
+        return null;
+    }
+}
@@ -0,0 +1,57 @@
+package udem.taln.api;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.ner.NER;
+
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LLMCacheTest {
+
+    @Test
+    void key_dependsOnBackendModelAndPrompt() {
+        String key = LLMCache.key("MistralService", "mistral-small", "prompt");
+        assertEquals(64, key.length());
+        assertEquals(key, LLMCache.key("MistralService", "mistral-small", "prompt"));
+        assertFalse(key.equals(LLMCache.key("OllamaService", "mistral-small", "prompt")));
+        assertFalse(key.equals(LLMCache.key("MistralService", "mistral-large", "prompt")));
+        assertFalse(key.equals(LLMCache.key("MistralService", "mistral-small", "prompt2")));
+    }
+
+    @Test
+    void diskTier_survivesNewInstance() throws Exception {
+        var dir = Files.createTempDirectory("llm-cache");
+        String key = LLMCache.key("b", "m", "p");
+        new LLMCache(10, dir).put(key, List.of(NER.TYPE.PERSON, NER.TYPE.NONE));
+
+        var reopened = new LLMCache(10, dir);
+        assertEquals(List.of(NER.TYPE.PERSON, NER.TYPE.NONE), reopened.get(key));
+        assertEquals(1, reopened.diskHits());
+        assertEquals(List.of(NER.TYPE.PERSON, NER.TYPE.NONE), reopened.get(key));
+        assertEquals(1, reopened.hits());
+        assertNull(reopened.get(LLMCache.key("b", "m", "other")));
+        assertEquals(1, reopened.misses());
+    }
+
+    @Test
+    void memoryTier_admitsOnlyMoreFrequentKeys() {
+        var cache = new LLMCache(2, null);
+        cache.put("hot1", List.of(NER.TYPE.PERSON));
+        cache.put("hot2", List.of(NER.TYPE.LOCATION));
+        for (int i = 0; i < 5; i++) {
+            cache.get("hot1");
+            cache.get("hot2");
+        }
+        // Seen once, less than the least recently used key
+        cache.put("cold", List.of(NER.TYPE.NONE));
+        assertNull(cache.get("cold"));
+        assertEquals(2, cache.size());
+
+        for (int i = 0; i < 10; i++) cache.get("warm");
+        cache.put("warm", List.of(NER.TYPE.ORGANIZATION));
+        assertEquals(List.of(NER.TYPE.ORGANIZATION), cache.get("warm"));
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,124 @@
+package udem.taln.api;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.ner.Analyser;
+import udem.taln.ner.NER;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LLMServiceTest {
+
+    private static final Map<Integer, Analyser.Pair> TEXT = Map.of(
+            3, new Analyser.Pair("Paris", "Paris"),
+            1, new Analyser.Pair("Alice", "Alice"),
+            2, new Analyser.Pair("Google", "Google"));
+
+    private static NER.TYPE typeOf(Analyser.Pair pair) {
+        return switch (pair.target) {
+            case "Alice" -> NER.TYPE.PERSON;
+            case "Google" -> NER.TYPE.ORGANIZATION;
+            default -> NER.TYPE.LOCATION;
+        };
+    }
+
+    @Test
+    void processAll_idAligned_underConcurrencyCap() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        LLMService backend = new LLMService() {
+            @Override
+            public List<NER.TYPE> process(Analyser.Pair sentence) {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return List.of(typeOf(sentence));
+            }
+
+            @Override
+            public LLMCapabilities capabilities() {
+                return new LLMCapabilities(1, 2, false);
+            }
+        };
+
+        var result = backend.execute(TEXT);
+        assertEquals(List.of(1, 2, 3), result.stream().map(NER.PSentence::id).toList());
+        assertEquals(List.of(NER.TYPE.PERSON), result.get(0).types());
+        assertEquals(List.of(NER.TYPE.LOCATION), result.get(2).types());
+        assertTrue(peak.get() <= 2);
+    }
+
+    @Test
+    void processAll_batches() {
+        List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+        LLMService backend = new LLMService() {
+            @Override
+            public List<NER.TYPE> process(Analyser.Pair sentence) {
+                throw new AssertionError("batches only");
+            }
+
+            @Override
+            public LLMCapabilities capabilities() {
+                return new LLMCapabilities(2, 4, false);
+            }
+
+            @Override
+            public CompletableFuture<List<List<NER.TYPE>>> processBatchAsync(List<Analyser.Pair> sentences) {
+                sizes.add(sentences.size());
+                return CompletableFuture.completedFuture(sentences.stream().map(p -> List.of(typeOf(p))).toList());
+            }
+        };
+
+        var result = backend.processAll(TEXT).join();
+        assertEquals(List.of(2, 1), sizes);
+        assertEquals(List.of(NER.TYPE.ORGANIZATION), result.get(1).types());
+    }
+
+    @Test
+    void processAll_cachedSentences_notSent() {
+        var cache = new LLMCache(10, null);
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        LLMService backend = new LLMService() {
+            @Override
+            public List<NER.TYPE> process(Analyser.Pair sentence) {
+                sent.add(sentence.target);
+                var types = List.of(typeOf(sentence));
+                cache().put(cacheKey(sentence), types);
+                return types;
+            }
+
+            @Override
+            public LLMCache cache() {
+                return cache;
+            }
+        };
+
+        backend.execute(Map.of(2, TEXT.get(2)));
+        var result = backend.execute(TEXT);
+        assertEquals(3, sent.size());
+        assertEquals(1, Collections.frequency(sent, "Google"));
+        assertEquals(List.of(1, 2, 3), result.stream().map(NER.PSentence::id).toList());
+        assertEquals(List.of(NER.TYPE.ORGANIZATION), result.get(1).types());
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    void execute_failsWithTheBackendException() {
+        LLMService backend = sentence -> {
+            throw new IllegalStateException("backend down");
+        };
+
+        var e = assertThrows(IllegalStateException.class, () -> backend.execute(TEXT));
+        assertEquals("backend down", e.getMessage());
+    }
+}
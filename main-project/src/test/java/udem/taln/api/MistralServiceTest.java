@@ -0,0 +1,69 @@
+package udem.taln.api;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.ner.Analyser;
+import udem.taln.ner.NER;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MistralServiceTest {
+
+    private static List<Analyser.Pair> sentences(int... lengths) {
+        List<Analyser.Pair> out = new ArrayList<>();
+        for (int length : lengths) out.add(new Analyser.Pair("", "x".repeat(length)));
+        return out;
+    }
+
+    private static List<Integer> sizes(List<List<Analyser.Pair>> batches) {
+        return batches.stream().map(List::size).toList();
+    }
+
+    @Test
+    void pack_closesBatchesAtTokenBudget() {
+        // header 10 + sentences costing their length, budget 30
+        var batches = MistralService.pack(sentences(5, 5, 5, 10, 10, 4), p -> p.sentence.length(), 10, 30, 100);
+        assertEquals(List.of(3, 2, 1), sizes(batches));
+    }
+
+    @Test
+    void pack_sentenceCap_andOversizedAlone() {
+        assertEquals(List.of(2, 2, 1), sizes(MistralService.pack(sentences(1, 1, 1, 1, 1), p -> 1, 0, 100, 2)));
+        assertEquals(List.of(1, 1, 1), sizes(MistralService.pack(sentences(1, 50, 1), p -> p.sentence.length(), 0, 10, 10)));
+        assertTrue(MistralService.pack(List.of(), p -> 1, 0, 10, 10).isEmpty());
+    }
+
+    @Test
+    void pack_keepsOrder() {
+        var in = sentences(3, 4, 5, 6, 7);
+        var flat = MistralService.pack(in, p -> p.sentence.length(), 0, 9, 10).stream().flatMap(List::stream).toList();
+        assertEquals(in, flat);
+    }
+
+    @Test
+    void parseBatchLines_byNumber_notLineOrder() {
+        String content = """
+                1) ANSWER [[NONE]]
+
+                0) ANSWER [[PERSON]]
+                2) ANSWER [[PER]]
+                """;
+        assertEquals(List.of(NER.TYPE.PERSON, NER.TYPE.NONE, NER.TYPE.PERSON),
+                MistralService.parseBatchLines(content, 3));
+    }
+
+    @Test
+    void parseBatchLines_unnumbered_byRank_missingNull() {
+        var types = MistralService.parseBatchLines("ANSWER [[PERSON]]\n\nANSWER [[NONE]]\n", 3);
+        assertEquals(Arrays.asList(NER.TYPE.PERSON, NER.TYPE.NONE, null), types);
+    }
+
+    @Test
+    void parseBatchLines_numberedWithoutLabel_null() {
+        var types = MistralService.parseBatchLines("0) ANSWER [[LOC]]\n1) I am not sure\n2) ANSWER [[ORGANIZATION]]", 3);
+        assertEquals(Arrays.asList(NER.TYPE.LOCATION, null, NER.TYPE.ORGANIZATION), types);
+    }
+}
@@ -0,0 +1,83 @@
+package udem.taln.api.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AimdControllerTest {
+
+    @Test
+    void success_raisesRateAndConcurrency_upToMax() {
+        var aimd = new AimdController(100, 1, 101, 0.5, 2, Runnable::run);
+        for (int i = 0; i < 5; i++) {
+            aimd.acquire().join().release(AimdController.Outcome.SUCCESS, 0);
+        }
+        assertEquals(101, aimd.getRate(), 1e-9);
+        assertEquals(2, aimd.getLimit());
+        assertEquals(0, aimd.getInFlight());
+    }
+
+    @Test
+    void overload_halves_onceForRequestsSentTogether() {
+        var aimd = new AimdController(1000, 1, 1000, 0, 8, Runnable::run);
+        for (int i = 0; i < 30; i++) aimd.acquire().join().release(AimdController.Outcome.SUCCESS, 0);
+        assertEquals(8, aimd.getLimit());
+
+        var first = aimd.acquire().join();
+        var second = aimd.acquire().join();
+        first.release(AimdController.Outcome.OVERLOAD, 0);
+        second.release(AimdController.Outcome.OVERLOAD, 0);
+        assertEquals(500, aimd.getRate(), 1e-9);
+        assertEquals(4, aimd.getLimit());
+
+        aimd.acquire().join().release(AimdController.Outcome.OVERLOAD, 0);
+        assertEquals(250, aimd.getRate(), 1e-9);
+        assertEquals(2, aimd.getLimit());
+    }
+
+    @Test
+    void concurrencyLimit_holdsPermitUntilRelease() throws Exception {
+        var aimd = new AimdController(1000, 1, 1000, 0, 1, Runnable::run);
+        var first = aimd.acquire().join();
+        var second = aimd.acquire();
+        // Only a release gives the slot
+        assertFalse(second.isDone());
+        assertEquals(1, aimd.getInFlight());
+
+        first.release(AimdController.Outcome.NEUTRAL, 0);
+        second.get(1, TimeUnit.SECONDS).release(AimdController.Outcome.NEUTRAL, 0);
+        assertEquals(0, aimd.getInFlight());
+    }
+
+    @Test
+    void retryAfter_pausesNextPermits() throws Exception {
+        var delayed = new AtomicInteger();
+        var aimd = new AimdController(1000, 1, 1000, 0, 4, task -> {
+            delayed.incrementAndGet();
+            task.run();
+        });
+        long start = System.nanoTime();
+        aimd.acquire().join().release(AimdController.Outcome.OVERLOAD, 300);
+        var next = aimd.acquire();
+        assertEquals(1, aimd.getInFlight());
+
+        next.get(2, TimeUnit.SECONDS).release(AimdController.Outcome.SUCCESS, 0);
+        // Granted for the end of the pause, and completed on the executor of the controller
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+        assertEquals(1, delayed.get());
+    }
+
+    @Test
+    void retryAfterMs_secondsOrHttpDate() {
+        var now = Instant.parse("2024-01-01T00:00:00Z");
+        assertEquals(3000, AimdController.retryAfterMs(" 3 ", now));
+        assertEquals(10_000, AimdController.retryAfterMs("Mon, 1 Jan 2024 00:00:10 GMT", now));
+        assertEquals(0, AimdController.retryAfterMs("Sun, 31 Dec 2023 23:59:00 GMT", now));
+        assertEquals(0, AimdController.retryAfterMs("soon", now));
+        assertEquals(0, AimdController.retryAfterMs(null, now));
+    }
+}
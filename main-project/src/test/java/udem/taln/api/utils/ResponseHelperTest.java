@@ -0,0 +1,28 @@
+package udem.taln.api.utils;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.ner.NER;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseHelperTest {
+
+    @Test
+    void getTypes_takesTheTypesThePromptAsksFor() {
+        assertEquals(List.of(NER.TYPE.ORGANIZATION), ResponseHelper.getTypes("ANSWER [[ORGANIZATION]]"));
+        assertEquals(List.of(NER.TYPE.LOCATION), ResponseHelper.getTypes("ANSWER [[LOCATION]]"));
+        assertEquals(List.of(NER.TYPE.LOCATION), ResponseHelper.getTypes("ANSWER [[GPE]]"));
+        assertEquals(List.of(NER.TYPE.PERSON), ResponseHelper.getTypes("The answer is person."));
+        assertEquals(List.of(NER.TYPE.NONE), ResponseHelper.getTypes("ANSWER [[NONE]]"));
+    }
+
+    @Test
+    void getTypes_withoutLabel_null() {
+        assertNull(ResponseHelper.getTypes(""));
+        assertNull(ResponseHelper.getTypes("ANSWER [["));
+        assertNull(ResponseHelper.getTypes("I cannot tell from this sentence"));
+        assertNull(ResponseHelper.getTypes("ANSWER [[PRODUCT]]"));
+    }
+}
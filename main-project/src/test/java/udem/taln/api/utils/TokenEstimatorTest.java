@@ -0,0 +1,30 @@
+package udem.taln.api.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenEstimatorTest {
+
+    @Test
+    void estimate_fromLengthAndLines() {
+        var tokens = new TokenEstimator(10);
+        var e = tokens.estimate("x".repeat(400), 3);
+        assertEquals(100, e.prompt());
+        assertEquals(30, e.completion());
+        assertEquals(100, e.usage().promptTokens(), 1e-9);
+    }
+
+    @Test
+    void observe_movesEstimatesTowardsUsage() {
+        var tokens = new TokenEstimator(10);
+        String prompt = "x".repeat(400);
+        for (int i = 0; i < 50; i++) {
+            var e = tokens.estimate(prompt, 2);
+            tokens.observe(e, 200, 40);
+        }
+        var e = tokens.estimate(prompt, 2);
+        assertEquals(200, e.prompt(), 2);
+        assertEquals(40, e.completion(), 2);
+    }
+}
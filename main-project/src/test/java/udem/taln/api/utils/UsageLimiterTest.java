@@ -0,0 +1,46 @@
+package udem.taln.api.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsageLimiterTest {
+
+    @Test
+    void reserve_withinCapacity_noDelay() {
+        var limiter = UsageLimiter.perMinute(10, 6000, 600);
+        var r = limiter.reserve(new UsageLimiter.Usage(1, 3000, 100));
+        assertEquals(0, r.delayNanos());
+    }
+
+    @Test
+    void reserve_waitsForMostIndebtedDimension() {
+        // 100 prompt tokens/s, 10 completion tokens/s, buckets of one minute
+        var limiter = UsageLimiter.perMinute(100, 6000, 600);
+        limiter.reserve(new UsageLimiter.Usage(1, 6000, 0));
+        var r = limiter.reserve(new UsageLimiter.Usage(1, 500, 600));
+        // prompt: 500 tokens of debt at 100/s, completion still covered
+        assertEquals(5.0, r.delayNanos() / 1e9, 0.05);
+
+        var next = limiter.reserve(new UsageLimiter.Usage(1, 0, 100));
+        // completion: 100 tokens of debt at 10/s
+        assertEquals(10.0, next.delayNanos() / 1e9, 0.05);
+    }
+
+    @Test
+    void settle_givesBackOverestimate() {
+        var limiter = UsageLimiter.perMinute(100, 6000, 0);
+        var r = limiter.reserve(new UsageLimiter.Usage(1, 6000, 0));
+        limiter.settle(r, new UsageLimiter.Usage(1, 1000, 0));
+        assertEquals(0, limiter.reserve(new UsageLimiter.Usage(1, 4000, 0)).delayNanos());
+        assertTrue(limiter.reserve(new UsageLimiter.Usage(1, 2000, 0)).delayNanos() > 0);
+    }
+
+    @Test
+    void zeroLimit_isUnlimited() {
+        var limiter = UsageLimiter.perMinute(0, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.reserve(new UsageLimiter.Usage(1, 1_000_000, 1_000_000)).delayNanos());
+        }
+    }
+}
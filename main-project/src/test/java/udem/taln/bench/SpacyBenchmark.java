@@ -0,0 +1,222 @@
+package udem.taln.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import udem.taln.ner.Analyser;
+import udem.taln.ner.NER;
+import udem.taln.wrapper.SpacyPoolManager;
+import udem.taln.wrapper.SpacyWorkerPool;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.utils.ProcessMemory;
+import udem.taln.wrapper.utils.SpacyUtilities;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Throughput and latency of the spaCy wrapper, one run per configuration, each run printed and appended to
+ * {@code BENCH_OUT} as a JSON line so runs can be compared across commits and machines.
+ * <p>
+ * Two targets:
+ * <ul>
+ *     <li>{@code service}: {@code BENCH_CONCURRENCY} callers sending batches straight to a pool of
+ *     {@code BENCH_WORKERS} workers.</li>
+ *     <li>{@code ner}: {@code BENCH_CONCURRENCY} callers running {@link NER#execute(NER.MODE, Map)}, on the pools of
+ *     {@link NER}, sized by {@code SPACY_MAX_WORKERS} (fixed for the JVM, so one value per run of the harness).</li>
+ * </ul>
+ * Each request holds {@code BENCH_BATCH_SIZES} sentences of a {@link SyntheticCorpus} of {@code BENCH_SENTENCES}
+ * sentences. CPU is that of the JVM and of its child processes, memory the peak of their resident sets.
+ * <p>
+ * Settings are comma separated lists, read from system properties then env vars, e.g.
+ * {@code mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=udem.taln.bench.SpacyBenchmark
+ * -DBENCH_WORKERS=1,2,4 -DBENCH_CONCURRENCY=1,8}.
+ */
+public class SpacyBenchmark {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long SAMPLE_MS = 200;
+    // Keeps clear of the ports of the pools of NER
+    private static final int PORT_OFFSET = 200;
+
+    /**
+     * @param target      {@code service} or {@code ner}.
+     * @param model       the spaCy model, e.g. {@code en_core_web_sm}.
+     * @param workers     workers of the pool.
+     * @param concurrency callers sending requests at once.
+     * @param batchSize   sentences per request, also the {@code batch_size} of {@code nlp.pipe}.
+     * @param sentences   sentences of the corpus.
+     */
+    record Config(String target, String model, int workers, int concurrency, int batchSize, int sentences) {
+    }
+
+    /**
+     * @param cpuMs       CPU time of the JVM and its children during the run.
+     * @param peakRssMb   peak resident memory of the JVM and its children.
+     * @param workersRssMb peak resident memory of the children alone, i.e. the Python workers.
+     */
+    record Result(Config config, String commit, long timestamp, int requests, int errors, double seconds,
+                  double sentencesPerSec, double p50Ms, double p99Ms, double maxMs, double cpuMs,
+                  double cpuCores, double peakRssMb, double workersRssMb) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path out = Path.of(setting("BENCH_OUT", "target/spacy-bench.jsonl"));
+        if (out.getParent() != null) Files.createDirectories(out.getParent());
+        int sentences = Integer.parseInt(setting("BENCH_SENTENCES", "2000"));
+        List<Config> configs = new ArrayList<>();
+        for (String target : list("BENCH_TARGETS", "service,ner"))
+            for (String model : list("BENCH_MODELS", "en_core_web_sm"))
+                for (int workers : ints(target.equals("ner") ? String.valueOf(SpacyUtilities.getMaxWorkers())
+                        : setting("BENCH_WORKERS", "1,2,4")))
+                    for (int concurrency : ints(setting("BENCH_CONCURRENCY", "1,4,16")))
+                        for (int batchSize : ints(setting("BENCH_BATCH_SIZES", "32,256")))
+                            configs.add(new Config(target, model, workers, concurrency, batchSize, sentences));
+
+        long seed = Long.parseLong(setting("BENCH_SEED", "42"));
+        for (int i = 0; i < configs.size(); i++) {
+            // A corpus of its own per run, the entity cache would otherwise answer the runs after the first one
+            var result = run(configs.get(i), SyntheticCorpus.generate(sentences, seed + i, i * sentences));
+            String line = MAPPER.writeValueAsString(result);
+            System.out.println(line);
+            Files.writeString(out, line + System.lineSeparator(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        System.exit(0);
+    }
+
+    static Result run(Config config, List<String> corpus) {
+        var analyser = new Analyser();
+        var formatted = analyser.format(corpus, false);
+        List<List<NerItemDTO>> requests = new ArrayList<>();
+        List<NerItemDTO> current = new ArrayList<>();
+        for (var entry : new TreeMap<>(formatted).entrySet()) {
+            current.add(new NerItemDTO(entry.getKey(), entry.getValue().sentence, entry.getValue().target));
+            if (current.size() == config.batchSize()) {
+                requests.add(current);
+                current = new ArrayList<>();
+            }
+        }
+        if (!current.isEmpty()) requests.add(current);
+
+        return switch (config.target()) {
+            case "service" -> runService(config, requests);
+            case "ner" -> runNer(config, requests, formatted);
+            default -> throw new IllegalArgumentException("Unknown benchmark target: " + config.target());
+        };
+    }
+
+    private static Result runService(Config config, List<List<NerItemDTO>> requests) {
+        var policy = new SpacyWorkerPool.ScalingPolicy(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+        try (var manager = new SpacyPoolManager(config.workers(), config.workers(),
+                SpacyUtilities.getBasePort() + PORT_OFFSET, policy)) {
+            manager.start();
+            var pool = manager.pool(config.model(), SpacyUtilities.getPipelineProfile(NER.MODE.fromModel(config.model()).name()));
+            // Loads the model on every worker before the clock starts
+            var warmup = new ArrayList<CompletableFuture<?>>();
+            for (int i = 0; i < config.workers(); i++) {
+                warmup.add(pool.submit(w -> w.getBatch(config.model(), List.of(new NerItemDTO(0, "Warm up " + UUID.randomUUID() + ".", null)), 1)));
+            }
+            warmup.forEach(CompletableFuture::join);
+            return measure(config, requests, request -> pool.submit(
+                    w -> w.getBatch(config.model(), request, config.batchSize())).join());
+        }
+    }
+
+    private static Result runNer(Config config, List<List<NerItemDTO>> requests,
+                                 Map<Integer, Analyser.Pair> formatted) {
+        var mode = NER.MODE.fromModel(config.model());
+        NER.execute(mode, Map.of(0, new Analyser.Pair("", "Warm up.")));
+        return measure(config, requests, request -> {
+            Map<Integer, Analyser.Pair> text = new HashMap<>(request.size());
+            for (var item : request) text.put(item.id, formatted.get(item.id));
+            return NER.execute(mode, text);
+        });
+    }
+
+    private static Result measure(Config config, List<List<NerItemDTO>> requests,
+                                  Function<List<NerItemDTO>, ?> call) {
+        long[] latencies = new long[requests.size()];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        AtomicLong peakRss = new AtomicLong();
+        AtomicLong peakWorkersRss = new AtomicLong();
+        var sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> {
+            long workers = sumRss(ProcessHandle.current().descendants());
+            peakWorkersRss.accumulateAndGet(workers, Math::max);
+            peakRss.accumulateAndGet(workers + sumRss(Stream.of(ProcessHandle.current())), Math::max);
+        }, 0, SAMPLE_MS, TimeUnit.MILLISECONDS);
+
+        long cpuBefore = cpuNanos();
+        long start = System.nanoTime();
+        try (var callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < config.concurrency(); c++) {
+                callers.submit(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < requests.size()) {
+                        long sent = System.nanoTime();
+                        try {
+                            call.apply(requests.get(i));
+                        } catch (RuntimeException e) {
+                            errors.incrementAndGet();
+                        }
+                        latencies[i] = System.nanoTime() - sent;
+                    }
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long cpu = cpuNanos() - cpuBefore;
+        sampler.shutdownNow();
+
+        Arrays.sort(latencies);
+        double seconds = elapsed / 1e9;
+        int sentences = requests.stream().mapToInt(List::size).sum();
+        return new Result(config, setting("BENCH_COMMIT", ""), System.currentTimeMillis(), requests.size(),
+                errors.get(), seconds, sentences / seconds, percentile(latencies, 50) / 1e6,
+                percentile(latencies, 99) / 1e6, latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6,
+                cpu / 1e6, cpu / (double) elapsed, peakRss.get() / 1048576.0, peakWorkersRss.get() / 1048576.0);
+    }
+
+    /**
+     * @param sorted values in ascending order.
+     * @param p      percentile, between 0 and 100.
+     * @return the nearest-rank percentile, 0 without values.
+     */
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.clamp(rank - 1, 0, sorted.length - 1)];
+    }
+
+    private static long cpuNanos() {
+        return Stream.concat(Stream.of(ProcessHandle.current()), ProcessHandle.current().descendants())
+                .mapToLong(p -> p.info().totalCpuDuration().map(Duration::toNanos).orElse(0L))
+                .sum();
+    }
+
+    private static long sumRss(Stream<ProcessHandle> processes) {
+        return processes.mapToLong(p -> ProcessMemory.residentBytes(p.pid()).orElse(0L)).sum();
+    }
+
+    private static String setting(String key, String defaultValue) {
+        String val = System.getProperty(key);
+        if (val == null || val.isBlank()) val = System.getenv(key);
+        return val == null || val.isBlank() ? defaultValue : val.trim();
+    }
+
+    private static List<String> list(String key, String defaultValue) {
+        return Arrays.stream(setting(key, defaultValue).split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    private static int[] ints(String values) {
+        return Arrays.stream(values.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+                .mapToInt(Integer::parseInt).toArray();
+    }
+}
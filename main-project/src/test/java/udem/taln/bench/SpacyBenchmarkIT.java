@@ -0,0 +1,25 @@
+package udem.taln.bench;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Disabled smoke run of the benchmark harness, one small configuration.
+ * Enable locally only if your wrapper + Python environment is configured.
+ */
+@Disabled("Integration test: requires Python+spaCy wrapper runtime. Enable locally when environment is ready.")
+class SpacyBenchmarkIT {
+
+    @Test
+    void run_service_reportsThroughput() {
+        var config = new SpacyBenchmark.Config("service", "en_core_web_sm", 1, 2, 16, 64);
+        var result = SpacyBenchmark.run(config, SyntheticCorpus.generate(64, 7, 0));
+        assertEquals(0, result.errors());
+        assertEquals(4, result.requests());
+        assertTrue(result.sentencesPerSec() > 0);
+        assertTrue(result.p99Ms() >= result.p50Ms());
+    }
+}
@@ -0,0 +1,33 @@
+package udem.taln.bench;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.ner.Analyser;
+
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpacyBenchmarkTest {
+
+    @Test
+    void percentile_nearestRank() {
+        long[] sorted = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(5, SpacyBenchmark.percentile(sorted, 50));
+        assertEquals(10, SpacyBenchmark.percentile(sorted, 99));
+        assertEquals(0, SpacyBenchmark.percentile(new long[0], 50));
+    }
+
+    @Test
+    void corpus_bracketFormat() {
+        var corpus = SyntheticCorpus.generate(50, 1, 0);
+        assertEquals(50, new HashSet<>(corpus).size());
+        assertEquals(corpus, SyntheticCorpus.generate(50, 1, 0));
+
+        var formatted = new Analyser().format(corpus, false);
+        for (var pair : formatted.values()) {
+            assertFalse(pair.target.isEmpty());
+            assertTrue(pair.sentence.contains(pair.target));
+            assertFalse(pair.sentence.contains("["));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package udem.taln.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sentences in the format of the input files, one bracketed target per sentence ({@code [Paris]_{GPE}}), of
+ * varying length. Each sentence is unique, so the entity cache never answers in place of Python.
+ */
+final class SyntheticCorpus {
+    private static final String[][] ENTITIES = {
+            {"Alice Martin", "PERSON"}, {"Bob Tremblay", "PERSON"}, {"Marie Curie", "PERSON"}, {"John Smith", "PERSON"},
+            {"Google", "ORG"}, {"the United Nations", "ORG"}, {"Hydro-Quebec", "ORG"}, {"Ubisoft", "ORG"},
+            {"Montreal", "GPE"}, {"Paris", "GPE"}, {"Japan", "GPE"}, {"Toronto", "GPE"},
+            {"the Rocky Mountains", "LOC"}, {"the Atlantic", "LOC"}, {"Lake Ontario", "LOC"}, {"the Sahara", "LOC"}
+    };
+    private static final String[] TEMPLATES = {
+            "%s was mentioned in report %d",
+            "Yesterday, %s announced the results of study %d",
+            "According to the records of file %d, %s had been involved for years",
+            "Nobody expected %s to appear in chapter %d of the book"
+    };
+    private static final String[] CLAUSES = {
+            "while the committee was still reviewing the evidence",
+            "after a long and heated debate among the members",
+            "which surprised most of the observers in the room",
+            "despite the warnings published earlier that month",
+            "as the press had predicted a few weeks before"
+    };
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * @param sentences number of sentences.
+     * @param seed      seed of the generator, the same seed giving the same corpus.
+     * @param first     number of the first sentence, written in it; distinct ranges give distinct sentences.
+     */
+    static List<String> generate(int sentences, long seed, int first) {
+        Random random = new Random(seed);
+        List<String> corpus = new ArrayList<>(sentences);
+        for (int i = 0; i < sentences; i++) {
+            String[] entity = ENTITIES[random.nextInt(ENTITIES.length)];
+            String target = "[" + entity[0] + "]_{" + entity[1] + "}";
+            String template = TEMPLATES[random.nextInt(TEMPLATES.length)];
+            String sentence = template.indexOf("%s") < template.indexOf("%d")
+                    ? String.format(template, target, first + i)
+                    : String.format(template, first + i, target);
+            StringBuilder sb = new StringBuilder(sentence);
+            int clauses = random.nextInt(4);
+            for (int c = 0; c < clauses; c++) sb.append(", ").append(CLAUSES[random.nextInt(CLAUSES.length)]);
+            corpus.add(sb.append('.').toString());
+        }
+        return corpus;
+    }
+}
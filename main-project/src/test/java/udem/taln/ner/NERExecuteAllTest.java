@@ -0,0 +1,67 @@
+package udem.taln.ner;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.wrapper.SpacyPoolManager;
+import udem.taln.wrapper.SpacyWorkerPool;
+import udem.taln.wrapper.StubPython;
+import udem.taln.wrapper.transport.SpacyTransport;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NERExecuteAllTest {
+    private static final SpacyWorkerPool.ScalingPolicy POLICY = new SpacyWorkerPool.ScalingPolicy(1, Long.MAX_VALUE, 0);
+
+    private static Map<Integer, Analyser.Pair> text(int sentences) {
+        Map<Integer, Analyser.Pair> text = new LinkedHashMap<>();
+        for (int id = 0; id < sentences; id++) {
+            String sentence = "Sentence " + UUID.randomUUID();
+            text.put(id, new Analyser.Pair(sentence, sentence));
+        }
+        return text;
+    }
+
+    private static SpacyPoolManager answering(String label) {
+        return new SpacyPoolManager(0, 1, 0, POLICY, (model, slot) -> new StubPython(model).service(StubPython.answering(label)));
+    }
+
+    @Test
+    void smallTexts_goThroughTheBatcherOfTheCurrentPool() {
+        // Small enough for the micro batcher
+        NER.usePools(answering("PERSON"));
+        assertEquals(List.of(NER.TYPE.PERSON), NER.execute(NER.MODE.SM, text(1)).getFirst().types());
+
+        // The batcher of the closed pool is not used again
+        NER.usePools(answering("DATE"));
+        assertEquals(List.of(NER.TYPE.NONE), NER.execute(NER.MODE.SM, text(1)).getFirst().types());
+    }
+
+    @Test
+    void executeAll_runsTheModelsAtTheSameTime() {
+        // Each model only answers once the other one was called too: run one after the other, both would time out
+        var called = ConcurrentHashMap.<String>newKeySet();
+        var bothCalled = new CountDownLatch(2);
+        SpacyTransport overlapping = (model, items, batchSize) -> {
+            if (called.add(model)) bothCalled.countDown();
+            try {
+                if (!bothCalled.await(5, TimeUnit.SECONDS)) throw new IllegalStateException(model + " ran alone");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return StubPython.answering("PERSON").batch(model, items, batchSize);
+        };
+        NER.usePools(new SpacyPoolManager(0, 1, 0, POLICY, (model, slot) -> new StubPython(model).service(overlapping)));
+
+        var results = NER.executeAll(EnumSet.of(NER.MODE.SM, NER.MODE.MD), text(3));
+
+        assertEquals(Set.of(NER.MODE.SM, NER.MODE.MD), results.keySet());
+        for (var sentences : results.values()) {
+            assertEquals(List.of(0, 1, 2), sentences.stream().map(NER.PSentence::id).toList());
+            for (var s : sentences) assertEquals(List.of(NER.TYPE.PERSON), s.types());
+        }
+    }
+}
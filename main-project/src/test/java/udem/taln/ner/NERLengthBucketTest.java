@@ -0,0 +1,20 @@
+package udem.taln.ner;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NERLengthBucketTest {
+
+    @Test
+    void estimateTokens_wordsAndPunctuation() {
+        assertEquals(5, NER.estimateTokens("Bob lives in Paris."));
+        assertEquals(3, NER.estimateTokens("  U.S  "));
+    }
+
+    @Test
+    void estimateTokens_empty() {
+        assertEquals(0, NER.estimateTokens(""));
+        assertEquals(0, NER.estimateTokens(null));
+    }
+}
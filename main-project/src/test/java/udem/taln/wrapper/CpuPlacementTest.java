@@ -0,0 +1,27 @@
+package udem.taln.wrapper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CpuPlacementTest {
+
+    @Test
+    void coresFor_splitsAfterReserved() {
+        assertEquals(List.of(1, 2), CpuPlacement.coresFor(0, 2, 8, 1));
+        assertEquals(List.of(3, 4), CpuPlacement.coresFor(1, 2, 8, 1));
+    }
+
+    @Test
+    void coresFor_wrapsAround() {
+        assertEquals(List.of(7, 1), CpuPlacement.coresFor(3, 2, 8, 1));
+    }
+
+    @Test
+    void coresFor_fewCores() {
+        assertEquals(List.of(0), CpuPlacement.coresFor(0, 4, 1, 1));
+        assertEquals(List.of(1), CpuPlacement.coresFor(2, 1, 2, 1));
+    }
+}
@@ -0,0 +1,42 @@
+package udem.taln.wrapper;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.wrapper.dto.EntityDTO;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityCacheTest {
+
+    @Test
+    void labelsFor_target() {
+        var ents = List.of(new EntityDTO("PERSON", 0, 5), new EntityDTO("GPE", 15, 20));
+        String sentence = "Alice moved to Paris.";
+        assertEquals(List.of("GPE"), EntityCache.labelsFor(sentence, ents, " Paris "));
+        assertEquals(List.of(), EntityCache.labelsFor(sentence, ents, "Pari"));
+        assertEquals(List.of("PERSON", "GPE"), EntityCache.labelsFor(sentence, ents, null));
+    }
+
+    @Test
+    void labelsFor_codePointOffsets() {
+        // The emoji is one code point for Python but two chars for Java
+        String sentence = "😀 Bob met Ann";
+        var ents = List.of(new EntityDTO("PERSON", 2, 5), new EntityDTO("PERSON", 10, 13));
+        assertEquals(List.of("PERSON"), EntityCache.labelsFor(sentence, ents, "Bob"));
+        assertEquals(List.of("PERSON"), EntityCache.labelsFor(sentence, ents, "Ann"));
+    }
+
+    @Test
+    void cache_evictsLeastRecentlyUsed() {
+        var cache = new EntityCache(2);
+        cache.put("sm", "a", List.of());
+        cache.put("sm", "b", List.of());
+        assertNotNull(cache.get("sm", "a"));
+        cache.put("sm", "c", List.of());
+        assertNull(cache.get("sm", "b"));
+        assertNotNull(cache.get("sm", "a"));
+        assertNull(cache.get("lg", "a"));
+        assertEquals(2, cache.size());
+    }
+}
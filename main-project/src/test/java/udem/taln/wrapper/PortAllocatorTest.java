@@ -0,0 +1,58 @@
+package udem.taln.wrapper;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortAllocatorTest {
+
+    @Test
+    void slots_ownConsecutivePortPairs() {
+        var ports = new PortAllocator(25333, port -> true);
+        assertEquals(0, ports.acquire());
+        assertEquals(1, ports.acquire());
+        assertEquals(25335, ports.javaPort(1));
+        assertEquals(25336, ports.pythonPort(1));
+    }
+
+    @Test
+    void released_slot_isReusedFirst() {
+        var ports = new PortAllocator(30000, port -> true);
+        ports.acquire();
+        int second = ports.acquire();
+        ports.acquire();
+        ports.release(second);
+        assertEquals(second, ports.acquire());
+        assertEquals(3, ports.acquire());
+    }
+
+    @Test
+    void concurrentAcquire_neverSharesSlot() throws Exception {
+        var ports = new PortAllocator(30000, port -> true);
+        Set<Integer> slots = ConcurrentHashMap.newKeySet();
+        try (var callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 200; i++) callers.submit(() -> slots.add(ports.acquire()));
+        }
+        assertEquals(200, slots.size());
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 200; i++) expected.add(i);
+        assertEquals(expected, slots);
+    }
+
+    @Test
+    void slotWithATakenPort_isSkipped() throws Exception {
+        try (var taken = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            // The taken port is the Python one of slot 0
+            var ports = new PortAllocator(taken.getLocalPort() - 1);
+            assertEquals(1, ports.acquire());
+            assertEquals(2, ports.acquire());
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package udem.taln.wrapper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PythonLauncherTest {
+
+    @Test
+    void torchArgs_onlyWhenTheTransformerMayBeLoaded() {
+        assertEquals(List.of(), PythonLauncher.torchArgs(List.of("en_core_web_sm")));
+        assertEquals(List.of(), PythonLauncher.torchArgs(List.of("en_core_web_md", "en_core_web_lg")));
+        assertEquals("--torch-threads", PythonLauncher.torchArgs(List.of("en_core_web_trf")).getFirst());
+        // No list means any model
+        assertEquals("--torch-threads", PythonLauncher.torchArgs(List.of()).getFirst());
+    }
+}
@@ -0,0 +1,134 @@
+package udem.taln.wrapper;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.wrapper.dto.DaemonDTO;
+import udem.taln.wrapper.transport.SpacyTransport;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpacyDaemonClientTest {
+    private static final List<String> MODELS = List.of("en_core_web_sm");
+    private static final PipelineProfile PROFILE = PipelineProfile.NER_ONLY;
+
+    /**
+     * Lease side of a daemon, its leases expiring on the first renewal when {@code expire} is set.
+     */
+    private static final class Leases {
+        final List<String> acquired = new CopyOnWriteArrayList<>();
+        final List<String> released = new CopyOnWriteArrayList<>();
+        final AtomicInteger renewals = new AtomicInteger();
+        volatile boolean expire;
+
+        /**
+         * @param wrapper whether the entry point also serves {@link WrapperInterface}, a daemon attaching fails on
+         *                after taking its lease otherwise.
+         */
+        SpacyDaemonClient.Connection connection(boolean wrapper) {
+            Class<?>[] served = wrapper
+                    ? new Class<?>[]{WrapperInterface.class, DaemonInterface.class}
+                    : new Class<?>[]{DaemonInterface.class};
+            Object entry = Proxy.newProxyInstance(getClass().getClassLoader(), served, (proxy, method, args) ->
+                    switch (method.getName()) {
+                        case "acquireLease" -> {
+                            String lease = UUID.randomUUID().toString();
+                            acquired.add(lease);
+                            yield lease;
+                        }
+                        case "renewLease" -> {
+                            renewals.incrementAndGet();
+                            yield !expire;
+                        }
+                        case "releaseLease" -> {
+                            released.add((String) args[0]);
+                            yield null;
+                        }
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+            return new SpacyDaemonClient.Connection(entry, () -> {
+            });
+        }
+    }
+
+    private static Path registry(int... ports) throws Exception {
+        Path dir = Files.createTempDirectory("taln-daemons");
+        for (int port : ports) {
+            Files.writeString(dir.resolve(port + ".json"), "{\"port\": " + port + ", \"pid\": "
+                    + ProcessHandle.current().pid() + ", \"models\": [\"en_core_web_sm\"], \"exclude\": [\""
+                    + String.join("\", \"", PROFILE.exclude()) + "\"], \"uds\": null, \"authToken\": \"t\"}");
+        }
+        return dir;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("condition not met within 5 s");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void attach_releasesTheLeaseOfADaemonItFailsOn_andFallsBackToTheNextOne() throws Exception {
+        var leases = new Leases();
+        var connections = new AtomicInteger();
+        // Whichever daemon is tried first fails once it took a lease
+        try (var client = new SpacyDaemonClient(MODELS, PROFILE, SpacyTransport.Kind.PY4J, registry(41001, 41002),
+                60_000, (DaemonDTO daemon) -> leases.connection(connections.incrementAndGet() > 1))) {
+            client.attach();
+
+            assertEquals(2, connections.get());
+            assertEquals(2, leases.acquired.size());
+            assertEquals(List.of(leases.acquired.getFirst()), leases.released);
+            assertEquals(OptionalLong.of(ProcessHandle.current().pid()), client.pid());
+            assertNotNull(client.wrapper());
+        }
+        assertEquals(leases.acquired, leases.released);
+    }
+
+    @Test
+    void lease_isRenewed_andAcquiredAgainOnceExpired() throws Exception {
+        var leases = new Leases();
+        try (var client = new SpacyDaemonClient(MODELS, PROFILE, SpacyTransport.Kind.PY4J, registry(41003), 30,
+                daemon -> leases.connection(true))) {
+            client.attach();
+            waitFor(() -> leases.renewals.get() >= 2);
+            assertEquals(1, leases.acquired.size(), "a renewed lease is kept");
+
+            leases.expire = true;
+            waitFor(() -> leases.acquired.size() >= 2);
+        }
+        // Only the lease held at close is released, the expired one is already gone on the daemon
+        assertEquals(List.of(leases.acquired.getLast()), leases.released);
+    }
+
+    @Test
+    void registry_isMadeOwnerOnly_andEntriesWithoutTokenSkipped() throws Exception {
+        var leases = new Leases();
+        var tried = new CopyOnWriteArrayList<Integer>();
+        Path dir = registry(41004, 41005);
+        Path tokenless = dir.resolve("41004.json");
+        Files.writeString(tokenless, Files.readString(tokenless).replace(", \"authToken\": \"t\"", ""));
+        Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        try (var client = new SpacyDaemonClient(MODELS, PROFILE, SpacyTransport.Kind.PY4J, dir, 60_000, daemon -> {
+            tried.add(daemon.port);
+            return leases.connection(true);
+        })) {
+            client.attach();
+            assertEquals(List.of(41005), tried);
+            assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(dir));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package udem.taln.wrapper;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpacyForkParentTest {
+
+    /**
+     * Parent process answering the fork commands the way {@code wrapper_fork.py} does, without forking anything.
+     */
+    private static final class FakeParent extends PythonLauncher {
+        private final AtomicLong pids = new AtomicLong(100);
+        // java port -> pid of its last child
+        final Map<Integer, Long> forked = new ConcurrentHashMap<>();
+        final CompletableFuture<Integer> exit = new CompletableFuture<>();
+        private Consumer<String> output;
+
+        FakeParent() {
+            super("python", new File("EndPoint.py"), List.of());
+        }
+
+        @Override
+        public synchronized PythonLauncher setOutput(Consumer<String> output) {
+            this.output = output;
+            return this;
+        }
+
+        @Override
+        public synchronized void start() {
+        }
+
+        @Override
+        public synchronized void send(String line) {
+            String[] parts = line.split(" ");
+            if (parts[0].equals("fork")) {
+                long pid = pids.incrementAndGet();
+                forked.put(Integer.parseInt(parts[1]), pid);
+                output.accept("forked " + parts[1] + " " + pid);
+            }
+        }
+
+        void exited(int port, long pid, int code) {
+            output.accept("exited " + port + " " + pid + " " + code);
+        }
+
+        @Override
+        public synchronized CompletableFuture<Integer> onExit() {
+            return exit;
+        }
+
+        @Override
+        public synchronized long pid() {
+            return 1;
+        }
+
+        @Override
+        public synchronized void stop() {
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !exit.isDone();
+        }
+    }
+
+    @Test
+    void child_exitsOnItsOwn() throws Exception {
+        var python = new FakeParent();
+        try (var parent = new SpacyForkParent("en_core_web_lg", python)) {
+            var first = parent.child(1, 2, null);
+            var second = parent.child(3, 4, null);
+            first.start();
+            second.start();
+
+            python.exited(1, python.forked.get(1), 2);
+            assertEquals(2, (int) first.onExit().getNow(-1));
+            assertFalse(first.isAlive());
+            assertFalse(second.onExit().isDone());
+            assertTrue(second.isAlive());
+            assertTrue(parent.isAlive());
+        }
+    }
+
+    @Test
+    void restartedChild_ignoresTheExitOfThePreviousOne() throws Exception {
+        var python = new FakeParent();
+        try (var parent = new SpacyForkParent("en_core_web_lg", python)) {
+            var child = parent.child(1, 2, null);
+            child.start();
+            long previous = python.forked.get(1);
+            child.stop();
+            child.start();
+
+            python.exited(1, previous, -15);
+            assertFalse(child.onExit().isDone());
+            python.exited(1, python.forked.get(1), 0);
+            assertEquals(0, (int) child.onExit().getNow(-1));
+        }
+    }
+
+    @Test
+    void children_exitWithTheParent() throws Exception {
+        var python = new FakeParent();
+        try (var parent = new SpacyForkParent("en_core_web_lg", python)) {
+            var first = parent.child(1, 2, null);
+            var second = parent.child(3, 4, null);
+            first.start();
+            second.start();
+
+            python.exit.complete(137);
+            assertEquals(137, (int) first.onExit().getNow(-1));
+            assertEquals(137, (int) second.onExit().getNow(-1));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package udem.taln.wrapper;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.wrapper.dto.NerDTO;
+import udem.taln.wrapper.dto.NerItemDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpacyMicroBatcherTest {
+
+    private static CompletableFuture<List<NerDTO>> echo(List<NerItemDTO> items) {
+        List<NerDTO> results = new ArrayList<>();
+        for (var item : items) {
+            var dto = new NerDTO();
+            dto.id = item.id;
+            dto.labels = List.of(item.sentence);
+            results.add(dto);
+        }
+        return CompletableFuture.completedFuture(results);
+    }
+
+    @Test
+    void submit_coalescesCallers() {
+        List<Integer> sizes = new ArrayList<>();
+        var batcher = new SpacyMicroBatcher(items -> {
+            sizes.add(items.size());
+            return echo(items);
+        }, 3, 1_000, 1_000);
+        var first = batcher.submit(List.of(new NerItemDTO(0, "a", null), new NerItemDTO(1, "b", null)));
+        var second = batcher.submit(List.of(new NerItemDTO(0, "c", null)));
+
+        assertEquals(List.of(3), sizes);
+        assertEquals(List.of("a"), first.join().get(0).labels);
+        assertEquals(1, first.join().get(1).id);
+        assertEquals(0, second.join().getFirst().id);
+        assertEquals(List.of("c"), second.join().getFirst().labels);
+    }
+
+    @Test
+    void submit_flushesOnWindow() {
+        var batcher = new SpacyMicroBatcher(SpacyMicroBatcherTest::echo, 100, 10, 10);
+        var result = batcher.submit(List.of(new NerItemDTO(5, "x", null))).join();
+        assertEquals(5, result.getFirst().id);
+        assertEquals(1, batcher.getBatchCount());
+    }
+
+    @Test
+    void window_shrinksWithSlowCalls() {
+        var batcher = new SpacyMicroBatcher(items -> CompletableFuture.supplyAsync(() -> {
+            try {
+                Thread.sleep(60);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return echo(items).join();
+        }), 1, 20, 50);
+        assertEquals(20, batcher.getWindowMs());
+        batcher.submit(List.of(new NerItemDTO(0, "x", null))).join();
+        assertEquals(0, batcher.getWindowMs());
+    }
+}
@@ -0,0 +1,61 @@
+package udem.taln.wrapper;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.wrapper.utils.SpacyUtilities;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpacyPoolManagerTest {
+
+    @Test
+    void pools_shareTheCores() {
+        try (var manager = new SpacyPoolManager(0, 2, 0, new SpacyWorkerPool.ScalingPolicy(1, Long.MAX_VALUE, 0),
+                (model, slot) -> new StubPython(model).service(StubPython.answering("PERSON")))) {
+            manager.start();
+            var lg = manager.pool("en_core_web_lg", PipelineProfile.NER_ONLY);
+            assertEquals(SpacyUtilities.getTorchThreads(2), lg.getWorkerThreads());
+
+            // Compared models: 4 workers may now run side by side
+            var sm = manager.pool("en_core_web_sm", PipelineProfile.NER_ONLY);
+            assertEquals(SpacyUtilities.getTorchThreads(4), sm.getWorkerThreads());
+            assertEquals(SpacyUtilities.getTorchThreads(4), lg.getWorkerThreads());
+            assertSame(sm, manager.pool("en_core_web_sm", PipelineProfile.NER_ONLY));
+        }
+    }
+
+    @Test
+    void pools_startSideBySide() throws Exception {
+        var lgLoading = new CountDownLatch(1);
+        var smCreated = new CountDownLatch(1);
+        var lgSawSm = new AtomicBoolean();
+        try (var manager = new SpacyPoolManager(1, 1, 0, new SpacyWorkerPool.ScalingPolicy(1, Long.MAX_VALUE, 0),
+                (model, slot) -> {
+                    if (model.equals("en_core_web_sm")) {
+                        smCreated.countDown();
+                    } else {
+                        lgLoading.countDown();
+                        try {
+                            lgSawSm.set(smCreated.await(5, TimeUnit.SECONDS));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return new StubPython(model).service(StubPython.answering("PERSON"));
+                })) {
+            manager.start();
+            var lg = CompletableFuture.supplyAsync(() -> manager.pool("en_core_web_lg", PipelineProfile.NER_ONLY));
+            assertTrue(lgLoading.await(5, TimeUnit.SECONDS));
+
+            // The lg pool is still loading its worker, it does not hold up this one
+            var sm = manager.pool("en_core_web_sm", PipelineProfile.NER_ONLY);
+            assertSame(sm, manager.pool("en_core_web_sm", PipelineProfile.NER_ONLY));
+            assertSame(lg.get(5, TimeUnit.SECONDS), manager.pool("en_core_web_lg", PipelineProfile.NER_ONLY));
+            assertTrue(lgSawSm.get(), "the sm pool started while the lg one was loading");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package udem.taln.wrapper;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.transport.SpacyTransport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpacyWorkerPoolTest {
+    private static final String MODEL = "en_core_web_sm";
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("condition not met within 5 s");
+            Thread.sleep(10);
+        }
+    }
+
+    private static CompletableFuture<String> call(SpacyWorkerPool pool) {
+        String sentence = "Sentence " + UUID.randomUUID();
+        return pool.submit(w -> w.getBatch(MODEL, List.of(new NerItemDTO(0, sentence, sentence)), 1))
+                .thenApply(results -> results.getFirst().labels.getFirst());
+    }
+
+    @Test
+    void autoscale_growsOnDeepQueue_thenShrinksIdleWorkers() throws Exception {
+        var release = new CountDownLatch(1);
+        SpacyTransport blocking = (model, items, batchSize) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return StubPython.answering("PERSON").batch(model, items, batchSize);
+        };
+        var policy = new SpacyWorkerPool.ScalingPolicy(1, Long.MAX_VALUE, 0);
+        try (var pool = new SpacyWorkerPool(MODEL, PipelineProfile.NER_ONLY, 0, 2, new PortAllocator(0, port -> true), policy,
+                slot -> new StubPython(MODEL).service(blocking))) {
+            List<CompletableFuture<String>> calls = new ArrayList<>();
+            // The first call starts a worker on its own, without waiting for a tick
+            calls.add(call(pool));
+            waitFor(() -> pool.size() == 1);
+            for (int i = 0; i < 6; i++) calls.add(call(pool));
+
+            pool.autoscale();
+            waitFor(() -> pool.size() == 2);
+            pool.autoscale();
+            assertEquals(2, pool.size(), "never over maxWorkers");
+
+            release.countDown();
+            for (var c : calls) assertEquals("PERSON", c.get(5, TimeUnit.SECONDS));
+
+            // Futures complete just before their worker counts the call as done
+            waitFor(() -> pool.stats().stream().allMatch(w -> w.inFlight() == 0));
+            pool.autoscale();
+            assertEquals(1, pool.size());
+            pool.autoscale();
+            assertEquals(0, pool.size());
+        }
+    }
+
+    @Test
+    void workerFailingToRestart_isReplaced() throws Exception {
+        var first = new AtomicReference<SpacyWrapperService>();
+        var policy = new SpacyWorkerPool.ScalingPolicy(1, Long.MAX_VALUE, Long.MAX_VALUE);
+        try (var pool = new SpacyWorkerPool(MODEL, PipelineProfile.NER_ONLY, 1, 1, new PortAllocator(0, port -> true), policy, slot -> {
+            if (slot == 0) {
+                var service = new StubPython(MODEL).failRestarts().service(StubPython.answering("STUCK"));
+                first.set(service);
+                return service;
+            }
+            return new StubPython(MODEL).service(StubPython.answering("PERSON"));
+        })) {
+            pool.start();
+            assertEquals("STUCK", call(pool).get(5, TimeUnit.SECONDS));
+
+            // What the watchdog does with a stuck worker, Python then exits before registering again
+            first.get().recycle();
+            assertTrue(first.get().broken().isDone());
+
+            waitFor(() -> pool.stats().stream().map(SpacyWorkerPool.WorkerStats::slot).toList().equals(List.of(1)));
+            for (int i = 0; i < 4; i++) assertEquals("PERSON", call(pool).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void overCeiling_picksTheFirstOwnWorkerAboveIt() {
+        long mb = 1024 * 1024;
+        var stats = List.of(
+                new SpacyWorkerPool.WorkerStats(0, 100 * mb, 0, false),
+                new SpacyWorkerPool.WorkerStats(1, 900 * mb, 2, true),
+                new SpacyWorkerPool.WorkerStats(2, -1, 0, false),
+                new SpacyWorkerPool.WorkerStats(3, 600 * mb, 1, false),
+                new SpacyWorkerPool.WorkerStats(4, 700 * mb, 0, false));
+
+        // A daemon keeps its memory in check itself, an unknown memory is never over
+        assertEquals(OptionalInt.of(3), SpacyWorkerPool.overCeiling(stats, 500 * mb));
+        assertEquals(OptionalInt.empty(), SpacyWorkerPool.overCeiling(stats, 800 * mb));
+        assertEquals(OptionalInt.empty(), SpacyWorkerPool.overCeiling(stats, 0));
+    }
+}
@@ -0,0 +1,114 @@
+package udem.taln.wrapper;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.transport.SpacyTransport;
+import udem.taln.wrapper.utils.SpacyUtilities;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpacyWrapperServiceTest {
+    private static final String MODEL = "en_core_web_sm";
+
+    private static String sentence() {
+        return "Sentence " + UUID.randomUUID();
+    }
+
+    @Test
+    void start_returnsOnceRegistered_andModelAwaited() {
+        var python = new StubPython(MODEL);
+        try (var service = python.service(StubPython.answering("PERSON"))) {
+            service.start();
+            service.awaitModel(MODEL);
+            String s = sentence();
+            assertEquals(List.of("PERSON"), service.getSM(s, s).labels);
+        }
+    }
+
+    @Test
+    void start_failsFast_whenPythonExitsBeforeRegistering() {
+        var python = new StubPython(MODEL).failStarts();
+        var service = python.service(StubPython.answering("PERSON"));
+        long before = System.nanoTime();
+        var e = assertThrows(RuntimeException.class, service::start);
+        assertTrue(System.nanoTime() - before < TimeUnit.SECONDS.toNanos(5), "no wait for the registration timeout");
+        assertTrue(e.getMessage().contains("register"), e.getMessage());
+    }
+
+    @Test
+    void timedOutCalls_releaseTheirSlot() throws Exception {
+        var hang = new CountDownLatch(1);
+        SpacyTransport slow = (model, items, batchSize) -> {
+            if (items.getFirst().sentence.startsWith("hang")) {
+                try {
+                    hang.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return StubPython.answering("PERSON").batch(model, items, batchSize);
+        };
+        try (var service = new StubPython(MODEL).service(slow)) {
+            service.start();
+            // More hung calls than slots (SPACY_MAX_IN_FLIGHT)
+            for (int i = 0; i < SpacyUtilities.getMaxInFlight() + 1; i++) {
+                String s = "hang " + sentence();
+                var e = assertThrows(CompletionException.class,
+                        () -> service.getSMAsync(s, s, Duration.ofMillis(100)).join());
+                assertTrue(e.getCause() instanceof TimeoutException, String.valueOf(e.getCause()));
+            }
+            String s = sentence();
+            assertEquals(List.of("PERSON"), service.getSM(s, s, Duration.ofSeconds(2)).labels);
+        } finally {
+            hang.countDown();
+        }
+    }
+
+    @Test
+    void failedAttempt_isRetried() {
+        var calls = new AtomicInteger();
+        SpacyTransport flaky = (model, items, batchSize) -> {
+            if (calls.incrementAndGet() == 1) throw new IllegalStateException("connection reset");
+            return StubPython.answering("PERSON").batch(model, items, batchSize);
+        };
+        try (var service = new StubPython(MODEL).service(flaky)) {
+            service.start();
+            String s = sentence();
+            assertEquals(List.of("PERSON"), service.getSM(s, s, Duration.ofSeconds(5)).labels);
+            assertEquals(2, calls.get());
+        }
+    }
+
+    @Test
+    void entityCache_keepsProfilesApart() {
+        var calls = new AtomicInteger();
+        SpacyTransport counting = (model, items, batchSize) -> {
+            calls.incrementAndGet();
+            return StubPython.answering("PERSON").batch(model, items, batchSize);
+        };
+        var nerOnly = new StubPython(MODEL);
+        var full = new StubPython(MODEL);
+        try (var a = new SpacyWrapperService(nerOnly.gateway, nerOnly, counting, List.of(MODEL), PipelineProfile.NER_ONLY);
+             var b = new SpacyWrapperService(full.gateway, full, counting, List.of(MODEL), PipelineProfile.FULL)) {
+            a.start();
+            b.start();
+            String s = sentence();
+            var items = List.of(new NerItemDTO(0, s, s));
+            a.getBatch(MODEL, items, 1);
+            a.getBatch(MODEL, items, 1);
+            assertEquals(1, calls.get());
+
+            b.getBatch(MODEL, items, 1);
+            assertEquals(2, calls.get());
+        }
+    }
+}
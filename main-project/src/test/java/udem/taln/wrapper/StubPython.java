@@ -0,0 +1,116 @@
+package udem.taln.wrapper;
+
+import udem.taln.wrapper.dto.EntityDTO;
+import udem.taln.wrapper.dto.NerDTO;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.transport.SpacyTransport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Python side of a {@link SpacyWrapperService} for tests, without Python: starting it registers right away and
+ * reports its models as loaded, unless it is told to fail its starts, in which case it exits at once.
+ */
+public final class StubPython implements PythonProcess {
+    private final EntryPoint entry = new EntryPoint();
+    final WrapperGatewayServer gateway = new WrapperGatewayServer(0, 0) {
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public EntryPoint entry() {
+            return entry;
+        }
+    };
+    private final List<String> models;
+    private final AtomicInteger starts = new AtomicInteger();
+    // Starts after this many exit before registering
+    private volatile int healthyStarts = Integer.MAX_VALUE;
+    private volatile boolean alive;
+    private volatile CompletableFuture<Integer> exit = new CompletableFuture<>();
+
+    public StubPython(String... models) {
+        this.models = List.of(models);
+    }
+
+    /**
+     * Every start exits before registering.
+     */
+    StubPython failStarts() {
+        healthyStarts = 0;
+        return this;
+    }
+
+    /**
+     * Every start after the first one exits before registering.
+     */
+    StubPython failRestarts() {
+        healthyStarts = 1;
+        return this;
+    }
+
+    public SpacyWrapperService service(SpacyTransport transport) {
+        return new SpacyWrapperService(gateway, this, transport, models);
+    }
+
+    /**
+     * @return a transport answering each item with one entity over its whole sentence, labelled {@code label}.
+     */
+    public static SpacyTransport answering(String label) {
+        return (model, items, batchSize) -> {
+            List<NerDTO> results = new ArrayList<>(items.size());
+            for (NerItemDTO item : items) {
+                var dto = new NerDTO();
+                dto.id = item.id;
+                dto.labels = List.of(label);
+                dto.ents = List.of(new EntityDTO(label, 0, item.sentence.codePointCount(0, item.sentence.length())));
+                results.add(dto);
+            }
+            return results;
+        };
+    }
+
+    int starts() {
+        return starts.get();
+    }
+
+    @Override
+    public void start() {
+        exit = new CompletableFuture<>();
+        if (starts.incrementAndGet() > healthyStarts) {
+            exit.complete(1);
+            return;
+        }
+        alive = true;
+        entry.registerPythonObject(null);
+        for (String model : models) entry.notifyModelLoaded(model);
+    }
+
+    @Override
+    public PythonProcess setCpus(List<Integer> cpus) {
+        return this;
+    }
+
+    @Override
+    public CompletableFuture<Integer> onExit() {
+        return exit;
+    }
+
+    @Override
+    public void stop() {
+        alive = false;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return alive;
+    }
+}
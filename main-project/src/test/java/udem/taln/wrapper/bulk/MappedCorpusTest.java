@@ -0,0 +1,45 @@
+package udem.taln.wrapper.bulk;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.transport.LabelCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedCorpusTest {
+
+    @Test
+    void writeCorpus_header() throws Exception {
+        Path file = Files.createTempFile("corpus", ".bin");
+        try {
+            MappedCorpus.writeCorpus(file, List.of(new NerItemDTO(4, "Bob", "Bob"), new NerItemDTO(5, "x", null)));
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+            assertEquals(MappedCorpus.CORPUS_MAGIC, buf.getInt());
+            assertEquals(2, buf.getInt());
+            assertEquals(4, buf.getInt());
+            assertEquals(3, buf.getInt());
+            assertEquals(8 + 12 + 6 + 12 + 1, buf.capacity());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void decodeResults_fixedWidth() throws Exception {
+        int width = 2;
+        ByteBuffer buf = ByteBuffer.allocate(12 + 2 * (5 + width));
+        buf.putInt(MappedCorpus.RESULTS_MAGIC).putInt(2).putInt(width);
+        buf.putInt(8).put((byte) 1).put((byte) LabelCodec.encode("GPE")).put((byte) 0);
+        buf.putInt(9).put((byte) 0).put((byte) 0).put((byte) 0);
+        var results = MappedCorpus.decodeResults(buf.flip());
+        assertEquals(8, results.get(0).id);
+        assertEquals(List.of("GPE"), results.get(0).labels);
+        assertEquals(9, results.get(1).id);
+        assertTrue(results.get(1).labels.isEmpty());
+    }
+}
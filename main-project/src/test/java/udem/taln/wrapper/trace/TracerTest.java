@@ -0,0 +1,32 @@
+package udem.taln.wrapper.trace;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TracerTest {
+
+    @Test
+    void remote_splitsRoundTrip() {
+        var trace = new CallTrace("sm");
+        trace.remote(10_000_000, Map.of("model", 6.0, "queue", 1.0));
+        var spans = trace.spans();
+        assertEquals(6_000_000L, (long) spans.get("python.model"));
+        assertEquals(1_000_000L, (long) spans.get("python.queue"));
+        assertEquals(3_000_000L, (long) spans.get("ipc"));
+    }
+
+    @Test
+    void record_aggregatesStages() {
+        Tracer.reset();
+        Tracer.record(Map.of("ipc", 2_000_000L, "total", 10_000_000L));
+        Tracer.record(Map.of("ipc", 4_000_000L, "total", 10_000_000L));
+        var ipc = Tracer.stages().get("ipc");
+        assertEquals(2, ipc.count());
+        assertEquals(3.0, ipc.meanMs(), 1e-9);
+        assertEquals(4_000_000, ipc.maxNanos());
+        assertTrue(Tracer.report().contains("ipc"));
+    }
+}
@@ -0,0 +1,65 @@
+package udem.taln.wrapper.transport;
+
+import org.junit.jupiter.api.Test;
+import udem.taln.wrapper.dto.NerItemDTO;
+import udem.taln.wrapper.trace.CallTrace;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnixSocketTransportTest {
+
+    @Test
+    void encode_frame() {
+        ByteBuffer buf = UnixSocketTransport.encode("sm", List.of(new NerItemDTO(7, "Paris é", null)), 32);
+        assertEquals(buf.remaining() - 4, buf.getInt());
+        assertEquals(UnixSocketTransport.OP_BATCH, buf.get());
+        assertEquals(2, buf.getShort());
+        buf.position(buf.position() + 2);
+        assertEquals(32, buf.getInt());
+        assertEquals(1, buf.getInt());
+        assertEquals(7, buf.getInt());
+        assertEquals("Paris é".getBytes(StandardCharsets.UTF_8).length, buf.getInt());
+    }
+
+    @Test
+    void decode_labels() {
+        ByteBuffer buf = ByteBuffer.allocate(32);
+        buf.put(UnixSocketTransport.STATUS_OK).putInt(1).putInt(3).putShort((short) 2)
+                .put((byte) LabelCodec.encode("PERSON")).putInt(0).putInt(5)
+                .put((byte) 0).putInt(6).putInt(9).flip();
+        var results = UnixSocketTransport.decode(buf);
+        assertEquals(1, results.size());
+        assertEquals(3, results.getFirst().id);
+        assertEquals(List.of("PERSON", ""), results.getFirst().labels);
+        assertEquals(6, results.getFirst().ents.get(1).start);
+        assertEquals(9, results.getFirst().ents.get(1).end);
+    }
+
+    @Test
+    void encode_traceId() {
+        ByteBuffer buf = UnixSocketTransport.encode("sm", List.of(), 1, "abc");
+        assertEquals(UnixSocketTransport.OP_BATCH_TRACED, buf.get(4));
+        assertEquals('c', buf.get(buf.limit() - 1));
+    }
+
+    @Test
+    void decode_tracedTiming() {
+        ByteBuffer buf = ByteBuffer.allocate(32);
+        buf.put(UnixSocketTransport.STATUS_OK).putInt(100).putInt(200).putInt(5_000).putInt(300).putInt(0).flip();
+        var spans = new CallTrace("sm");
+        assertEquals(List.of(), UnixSocketTransport.decode(buf, spans, 8_000_000));
+        assertEquals(5_000_000L, (long) spans.spans().get("python.model"));
+        assertEquals(2_400_000L, (long) spans.spans().get("ipc"));
+    }
+
+    @Test
+    void decode_error() {
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        buf.put((byte) 1).put("boom".getBytes(StandardCharsets.UTF_8)).flip();
+        assertThrows(IllegalStateException.class, () -> UnixSocketTransport.decode(buf));
+    }
+}
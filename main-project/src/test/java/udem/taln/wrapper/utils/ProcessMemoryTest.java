@@ -0,0 +1,20 @@
+package udem.taln.wrapper.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcessMemoryTest {
+
+    @Test
+    void parseKb_status() {
+        String status = "Name:\tpython\nVmPeak:\t  900 kB\nVmRSS:\t  512000 kB\nThreads:\t4\n";
+        assertEquals(512000L * 1024, ProcessMemory.parseKb(status, "VmRSS:").getAsLong());
+    }
+
+    @Test
+    void parseKb_missing() {
+        assertTrue(ProcessMemory.parseKb("Name:\tpython\n", "Pss:").isEmpty());
+    }
+}
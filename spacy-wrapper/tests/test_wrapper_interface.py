@@ -1,4 +1,5 @@
 import importlib
+import json
 
 import pytest
 
@@ -18,3 +19,69 @@ def test_process_smoke():
     wrapper = EndPoint()
     json_str = wrapper.processSM("Alice works at OpenAI in San Francisco.")
     assert isinstance(json_str, str) and len(json_str) > 0
+
+
+@pytest.mark.skip("Integration smoke test; enable when wrapper server is runnable")
+def test_process_batch_smoke():
+    wrapper = EndPoint()
+    items = json.dumps([
+        {"id": 0, "sentence": "Alice works at OpenAI.", "target": "Alice"},
+        {"id": 7, "sentence": "Bob visited Paris.", "target": "Paris"},
+    ])
+    results = json.loads(wrapper.processBatchSM(items, 2))
+    assert [r["id"] for r in results] == [0, 7]
+    assert all("ents" in r for r in results)
+
+
+def test_uds_results_carry_entity_offsets():
+    import struct
+    from wrapper.wrapper_uds import CODES, _encode_results
+
+    reply = _encode_results([(4, "Bob visited Paris.", "")], [[{"label": "GPE", "start": 12, "end": 17}]])
+    assert struct.unpack(">biiHBii", reply) == (0, 1, 4, 1, CODES["GPE"], 12, 17)
+
+
+def test_daemon_leases_keep_alive_until_released():
+    pytest.importorskip("py4j", reason="py4j not available")
+    from wrapper.wrapper_daemon import Leases
+
+    leases = Leases()
+    lease = leases.acquire(60000)
+    assert leases.idle_for() == 0.0
+    assert leases.renew(lease, 60000)
+    leases.release(lease)
+    assert not leases.renew(lease, 60000)
+    assert leases.idle_for() > 0.0
+
+
+def test_daemon_lease_expires_unless_renewed():
+    pytest.importorskip("py4j", reason="py4j not available")
+    import time
+    from wrapper.wrapper_daemon import Leases
+
+    leases = Leases()
+    kept = leases.acquire(60000)
+    lease = leases.acquire(20)
+    time.sleep(0.05)
+    # The other lease still holds the daemon, the expired one is gone
+    assert leases.idle_for() == 0.0
+    assert not leases.renew(lease, 60000)
+    released = time.monotonic()
+    leases.release(kept)
+    leases.acquire(20)
+    time.sleep(0.05)
+    # Idle since the expiry, not since the release before it
+    assert 0.0 < leases.idle_for() < time.monotonic() - released
+
+
+def test_daemon_record_is_owner_only(tmp_path):
+    pytest.importorskip("py4j", reason="py4j not available")
+    import os
+    import stat
+    from wrapper.wrapper_daemon import _write_record
+
+    path = str(tmp_path / "25400.json")
+    _write_record(path, {"port": 25400, "authToken": "secret"})
+    assert stat.S_IMODE(os.stat(path).st_mode) == 0o600
+    with open(path) as f:
+        assert json.load(f)["authToken"] == "secret"
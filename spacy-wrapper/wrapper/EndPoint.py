@@ -1,14 +1,82 @@
 #!/usr/bin/env python
 
 import json
+import os
+import threading
+import time
 
 import spacy
 from py4j.java_gateway import JavaGateway, GatewayParameters, CallbackServerParameters
 
-# Lazy-loaded caches
-_NLP_SM = None
-_NLP_MD = None
-_NLP_LG = None
+# Lazy-loaded caches, by model name
+_MODELS = {}
+# Models this process may load (None = any), so a worker never pays the memory of a model it does not serve
+_ALLOWED = None
+# One lock per model, so a call never loads a model a second time while it is being preloaded
+_LOCKS = {}
+_LOCKS_GUARD = threading.Lock()
+_INFERENCE_LOCKS = {}
+# Java entry point, told about each model once loaded
+_LISTENER = None
+# Components not loaded (pipeline profile), only doc.ents is ever read
+_EXCLUDE = set()
+
+
+def _load(name: str):
+    nlp = _MODELS.get(name)
+    if nlp is not None:
+        return nlp
+    if _ALLOWED is not None and name not in _ALLOWED:
+        raise RuntimeError(f"{name} is not served by this worker (serves {sorted(_ALLOWED)})")
+    with _LOCKS_GUARD:
+        lock = _LOCKS.setdefault(name, threading.Lock())
+    with lock:
+        nlp = _MODELS.get(name)
+        if nlp is None:
+            print(f"Loading spaCy model: {name} ...")
+            try:
+                nlp = spacy.load(name, exclude=sorted(_EXCLUDE))
+            except Exception as e:
+                if _LISTENER is not None:
+                    _LISTENER.notifyModelFailed(name, str(e))
+                raise RuntimeError(f"Failed to load {name}: {e}")
+            _MODELS[name] = nlp
+            print(f"Loaded {name} with {nlp.pipe_names}")
+            if _LISTENER is not None:
+                _LISTENER.notifyModelLoaded(name)
+    return nlp
+
+
+def _limit_torch_threads(n: int):
+    """
+    Caps the threads torch uses for transformer models, several workers sharing the cores of the node.
+    """
+    try:
+        import torch
+    except ImportError:
+        return
+    torch.set_num_threads(n)
+    torch.set_num_interop_threads(1)
+
+
+def _inference_lock(name: str):
+    with _LOCKS_GUARD:
+        return _INFERENCE_LOCKS.setdefault(name, threading.Lock())
+
+
+def _preload(names):
+    """
+    Loads the models side by side in the background, each one being reported to Java once loaded.
+    """
+    for name in names:
+        threading.Thread(target=_load_quietly, args=(name,), name=f"preload-{name}", daemon=True).start()
+
+
+def _load_quietly(name: str):
+    try:
+        _load(name)
+    except Exception as e:
+        print(f"Preloading {name} failed: {e}")
 
 
 def _extract_labels(doc, target: str | None = None):
@@ -18,6 +86,96 @@ def _extract_labels(doc, target: str | None = None):
     return [ent.label_ for ent in doc.ents]
 
 
+def _extract_ents(doc):
+    """
+    All the entities of the doc with their offsets, whatever the target: Java caches them by sentence
+    and answers each target from the offsets.
+    """
+    return [{"label": ent.label_, "start": ent.start_char, "end": ent.end_char} for ent in doc.ents]
+
+
+def _pipe(name: str, sentences, batch_size: int):
+    return _pipe_timed(name, sentences, batch_size)[0]
+
+
+def _pipe_timed(name: str, sentences, batch_size: int):
+    """
+    :return: the docs, the time waited for the inference lock and the inference time, in ms
+    """
+    nlp = _load(name)
+    # Several calls may be in flight (one thread per connection), parsing and serializing overlap
+    # but inference runs one batch at a time per model
+    start = time.perf_counter()
+    with _inference_lock(name):
+        locked = time.perf_counter()
+        docs = list(nlp.pipe(sentences, batch_size=max(1, int(batch_size))))
+    return docs, (locked - start) * 1000, (time.perf_counter() - locked) * 1000
+
+
+def _process_batch(name: str, items: str, batch_size: int) -> str:
+    """
+    Runs a whole batch through nlp.pipe, results are keyed by the id of their item.
+    """
+    data = json.loads(items)
+    docs = _pipe(name, [item["sentence"] for item in data], batch_size)
+    results = [{"id": item["id"], "labels": _extract_labels(doc, item.get("target")), "ents": _extract_ents(doc)}
+               for item, doc in zip(data, docs)]
+    return json.dumps(results)
+
+
+def _process_batch_traced(name: str, items: str, batch_size: int, trace_id: str) -> str:
+    """
+    Same as _process_batch, with the time spent in each stage of the call so Java can tell where it goes.
+    """
+    start = time.perf_counter()
+    data = json.loads(items)
+    received = time.perf_counter()
+    try:
+        docs, queue_ms, model_ms = _pipe_timed(name, [item["sentence"] for item in data], batch_size)
+    except Exception as e:
+        print(f"Batch {trace_id} on {name} failed: {e}")
+        raise
+    serialize_start = time.perf_counter()
+    results = [{"id": item["id"], "labels": _extract_labels(doc, item.get("target")), "ents": _extract_ents(doc)}
+               for item, doc in zip(data, docs)]
+    payload = json.dumps(results)
+    timing = {"receive": (received - start) * 1000, "queue": queue_ms, "model": model_ms,
+              "serialize": (time.perf_counter() - serialize_start) * 1000}
+    return '{"trace": %s, "timing": %s, "results": %s}' % (json.dumps(trace_id), json.dumps(timing), payload)
+
+
+def _profile_components(name: str, sentences: str) -> str:
+    """
+    Times each component of the full pipeline, in ms per document. The full pipeline is loaded only for the measure.
+    """
+    texts = json.loads(sentences)
+    full = spacy.load(name)
+    timings = {pipe_name: 0.0 for pipe_name in full.pipe_names}
+    tokenizer = 0.0
+    for text in texts:
+        start = time.perf_counter()
+        doc = full.make_doc(text)
+        tokenizer += time.perf_counter() - start
+        for pipe_name, proc in full.pipeline:
+            start = time.perf_counter()
+            doc = proc(doc)
+            timings[pipe_name] += time.perf_counter() - start
+    del full
+
+    n = max(1, len(texts))
+    components = {"tokenizer": tokenizer * 1000 / n}
+    components.update({k: v * 1000 / n for k, v in timings.items()})
+    excluded = sorted(_EXCLUDE & set(components))
+    return json.dumps({
+        "model": name,
+        "docs": len(texts),
+        "components": components,
+        "excluded": excluded,
+        "savedMs": sum(components[k] for k in excluded),
+        "totalMs": sum(components.values()),
+    })
+
+
 # noinspection PyPep8Naming
 class EndPoint(object):
     """
@@ -28,55 +186,123 @@ class EndPoint(object):
 
     @staticmethod
     def processLG(sentence: str, target: str = "") -> str:
-        global _NLP_LG
-        if _NLP_LG is None:
-            print("Loading spaCy model: en_core_web_lg ...")
-            try:
-                _NLP_LG = spacy.load('en_core_web_lg')
-                print("Loaded en_core_web_lg")
-            except Exception as e:
-                raise RuntimeError(f"Failed to load en_core_web_lg: {e}")
-        doc = _NLP_LG(sentence)
+        doc = _load('en_core_web_lg')(sentence)
         return json.dumps({"labels": _extract_labels(doc, target)})
 
     @staticmethod
     def processMD(sentence: str, target: str = "") -> str:
-        global _NLP_MD
-        if _NLP_MD is None:
-            print("Loading spaCy model: en_core_web_md ...")
-            try:
-                _NLP_MD = spacy.load('en_core_web_md')
-                print("Loaded en_core_web_md")
-            except Exception as e:
-                raise RuntimeError(f"Failed to load en_core_web_md: {e}")
-        doc = _NLP_MD(sentence)
+        doc = _load('en_core_web_md')(sentence)
         return json.dumps({"labels": _extract_labels(doc, target)})
 
     @staticmethod
     def processSM(sentence: str, target: str = "") -> str:
-        global _NLP_SM
-        if _NLP_SM is None:
-            print("Loading spaCy model: en_core_web_sm ...")
-            try:
-                _NLP_SM = spacy.load('en_core_web_sm')
-                print("Loaded en_core_web_sm")
-            except Exception as e:
-                raise RuntimeError(f"Failed to load en_core_web_sm: {e}")
-        doc = _NLP_SM(sentence)
+        doc = _load('en_core_web_sm')(sentence)
+        return json.dumps({"labels": _extract_labels(doc, target)})
+
+    @staticmethod
+    def processTRF(sentence: str, target: str = "") -> str:
+        doc = _load('en_core_web_trf')(sentence)
         return json.dumps({"labels": _extract_labels(doc, target)})
 
+    @staticmethod
+    def processBatchLG(items: str, batch_size: int) -> str:
+        return _process_batch('en_core_web_lg', items, batch_size)
 
-if __name__ == "__main__":
+    @staticmethod
+    def processBatchMD(items: str, batch_size: int) -> str:
+        return _process_batch('en_core_web_md', items, batch_size)
+
+    @staticmethod
+    def processBatchSM(items: str, batch_size: int) -> str:
+        return _process_batch('en_core_web_sm', items, batch_size)
+
+    @staticmethod
+    def processBatch(model: str, items: str, batch_size: int) -> str:
+        return _process_batch(model, items, batch_size)
+
+    @staticmethod
+    def processBatchTraced(model: str, items: str, batch_size: int, trace_id: str) -> str:
+        return _process_batch_traced(model, items, batch_size, trace_id)
+
+    @staticmethod
+    def profileComponents(model: str, sentences: str) -> str:
+        return _profile_components(model, sentences)
+
+
+def _serve_gateway(java_port: int, python_port: int, preload):
+    """
+    Registers with the Java gateway on its port pair and serves its calls until the process is stopped.
+    """
+    global _LISTENER
     gateway = JavaGateway(
-        gateway_parameters=GatewayParameters(address="127.0.0.1", port=25333),
-        callback_server_parameters=CallbackServerParameters()
+        gateway_parameters=GatewayParameters(address="127.0.0.1", port=java_port),
+        callback_server_parameters=CallbackServerParameters(address="127.0.0.1", port=python_port)
     )
-    gateway.entry_point.registerPythonObject(EndPoint())
-    print("Python side registered. Waiting for calls...")
-    import time
+    _LISTENER = gateway.entry_point
+    _LISTENER.registerPythonObject(EndPoint())
+    _LISTENER.notifyPid(os.getpid())
+    print(f"Python side registered on port {java_port}. Waiting for calls...")
+    # Models already in memory (forked worker) are reported right away
+    for name in list(_MODELS):
+        _LISTENER.notifyModelLoaded(name)
+    _preload(preload)
 
     try:
         while True:
             time.sleep(1)
     except KeyboardInterrupt:
         pass
+
+
+if __name__ == "__main__":
+    import argparse
+
+    parser = argparse.ArgumentParser(description="spaCy wrapper worker")
+    # Each worker of a pool gets its own port pair, defaults are the Py4J ones
+    parser.add_argument("--java-port", type=int, default=25333)
+    parser.add_argument("--python-port", type=int, default=25334)
+    parser.add_argument("--models", default="", help="comma separated models this worker may load, all if empty")
+    parser.add_argument("--preload", default="", help="comma separated models loaded right after registering")
+    parser.add_argument("--exclude", default="", help="comma separated components not loaded, for every model")
+    parser.add_argument("--torch-threads", type=int, default=0, help="intra-op threads of torch, left as is if 0")
+    parser.add_argument("--uds", default="", help="path of a Unix socket serving batches as binary frames")
+    parser.add_argument("--daemon", action="store_true", help="serve Py4J and outlive the JVMs, see wrapper_daemon")
+    parser.add_argument("--registry", default="", help="directory where a daemon announces itself")
+    parser.add_argument("--idle-timeout-ms", type=int, default=600000, help="lifetime of a daemon without any lease")
+    parser.add_argument("--max-rss-mb", type=int, default=0, help="memory above which an unleased daemon exits, 0 for none")
+    parser.add_argument("--fork-parent", action="store_true", help="load the models once and fork workers, see wrapper_fork")
+    args = parser.parse_args()
+    if args.models:
+        _ALLOWED = {m.strip() for m in args.models.split(",") if m.strip()}
+    _EXCLUDE = {c.strip() for c in args.exclude.split(",") if c.strip()}
+    if args.torch_threads > 0:
+        _limit_torch_threads(args.torch_threads)
+
+    if args.uds:
+        from wrapper_uds import serve_unix_socket
+
+        serve_unix_socket(args.uds, _pipe_timed, _extract_ents)
+
+    if args.fork_parent:
+        from wrapper_fork import serve_forks
+
+        def _serve_child(java_port: int, python_port: int, uds: str):
+            if uds:
+                from wrapper_uds import serve_unix_socket
+
+                serve_unix_socket(uds, _pipe_timed, _extract_ents)
+            _serve_gateway(java_port, python_port, [])
+
+        serve_forks(sorted(_ALLOWED or set()), _load, _serve_child)
+        raise SystemExit(0)
+
+    if args.daemon:
+        from wrapper_daemon import detach, serve_daemon
+
+        detach()
+        _preload([m.strip() for m in args.preload.split(",") if m.strip()])
+        serve_daemon(EndPoint, _load, _ALLOWED or set(), _EXCLUDE, args.registry, args.idle_timeout_ms, args.uds,
+                     args.max_rss_mb)
+        raise SystemExit(0)
+
+    _serve_gateway(args.java_port, args.python_port, [m.strip() for m in args.preload.split(",") if m.strip()])
@@ -0,0 +1,81 @@
+"""
+Offline bulk mode, the Python side of udem.taln.wrapper.bulk.SpacyBulkRunner.
+Reads a memory-mapped corpus, runs it through nlp.pipe with several processes and writes fixed-width results
+to a second mapped file, all ints being big-endian.
+
+corpus  : int magic | int count | count x (int id | int sentenceLength | sentence | int targetLength | target)
+results : int magic | int count | int width | count x (int id | byte labelCount | width x byte code)
+"""
+
+import argparse
+import mmap
+import struct
+import time
+
+import spacy
+
+from EndPoint import _extract_labels
+from wrapper_uds import CODES
+
+CORPUS_MAGIC = 0x54414C4E
+RESULTS_MAGIC = 0x54414C52
+
+
+def _read_corpus(path: str):
+    with open(path, "rb") as f, mmap.mmap(f.fileno(), 0, access=mmap.ACCESS_READ) as buf:
+        magic, count = struct.unpack_from(">ii", buf, 0)
+        if magic != CORPUS_MAGIC:
+            raise ValueError(f"{path} is not a corpus file")
+        offset = 8
+        items = []
+        for _ in range(count):
+            item_id, sentence_len = struct.unpack_from(">ii", buf, offset)
+            offset += 8
+            sentence = buf[offset:offset + sentence_len].decode("utf-8")
+            offset += sentence_len
+            (target_len,) = struct.unpack_from(">i", buf, offset)
+            offset += 4
+            target = buf[offset:offset + target_len].decode("utf-8")
+            offset += target_len
+            items.append((item_id, sentence, target))
+        return items
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Bulk spaCy NER over memory-mapped files")
+    parser.add_argument("--model", required=True)
+    parser.add_argument("--input", required=True)
+    parser.add_argument("--output", required=True)
+    parser.add_argument("--processes", type=int, default=1, help="n_process given to nlp.pipe")
+    parser.add_argument("--batch-size", type=int, default=256)
+    parser.add_argument("--width", type=int, default=16, help="labels kept per sentence")
+    parser.add_argument("--exclude", default="", help="comma separated components not loaded")
+    args = parser.parse_args()
+
+    start = time.perf_counter()
+    items = _read_corpus(args.input)
+    exclude = sorted({c.strip() for c in args.exclude.split(",") if c.strip()})
+    nlp = spacy.load(args.model, exclude=exclude)
+
+    width = max(1, min(255, args.width))
+    record = 4 + 1 + width
+    size = 12 + len(items) * record
+    with open(args.output, "w+b") as f:
+        f.truncate(size)
+        with mmap.mmap(f.fileno(), size) as out:
+            struct.pack_into(">iii", out, 0, RESULTS_MAGIC, len(items), width)
+            # as_tuples carries the index through the worker processes, pipe keeps the corpus order
+            docs = nlp.pipe(((sentence, i) for i, (_, sentence, _) in enumerate(items)),
+                            as_tuples=True, batch_size=max(1, args.batch_size), n_process=max(1, args.processes))
+            for doc, i in docs:
+                item_id, _, target = items[i]
+                codes = [CODES.get(label, 0) for label in _extract_labels(doc, target)][:width]
+                at = 12 + i * record
+                struct.pack_into(">iB", out, at, item_id, len(codes))
+                out[at + 5:at + 5 + len(codes)] = bytes(codes)
+            out.flush()
+    print(f"Bulk {args.model}: {len(items)} sentences in {time.perf_counter() - start:.1f}s")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,163 @@
+"""
+Persistent mode of the wrapper: instead of connecting to the gateway of one JVM, the process serves Py4J itself
+and outlives the JVMs using it, so models are only loaded once for a series of runs.
+
+Each daemon announces itself with a JSON file in the registry directory, which Java reads to find a daemon serving
+its model. JVMs hold leases, renewed while they run; the daemon exits once it has had no lease for the idle timeout.
+The registry is kept owner-only and the entry holds the Py4J auth token, so other users cannot attach.
+"""
+
+import json
+import os
+import secrets
+import threading
+import time
+import uuid
+
+from py4j.clientserver import ClientServer, JavaParameters, PythonParameters
+
+
+class Leases:
+    """
+    Leases held by the JVMs attached to the daemon. A lease a JVM stopped renewing (e.g. it crashed) expires on its own.
+    """
+
+    def __init__(self):
+        self._expiries = {}
+        self._guard = threading.Lock()
+        self._last_release = time.monotonic()
+
+    def acquire(self, ttl_ms: int) -> str:
+        lease = uuid.uuid4().hex
+        with self._guard:
+            self._expiries[lease] = time.monotonic() + ttl_ms / 1000
+        return lease
+
+    def renew(self, lease: str, ttl_ms: int) -> bool:
+        with self._guard:
+            if lease not in self._expiries:
+                return False
+            self._expiries[lease] = time.monotonic() + ttl_ms / 1000
+            return True
+
+    def release(self, lease: str):
+        with self._guard:
+            if self._expiries.pop(lease, None) is not None:
+                self._last_release = time.monotonic()
+
+    def idle_for(self) -> float:
+        """
+        :return: seconds since the last lease was released or expired, 0 while some lease is held.
+        """
+        now = time.monotonic()
+        with self._guard:
+            for lease, expiry in list(self._expiries.items()):
+                if expiry < now:
+                    del self._expiries[lease]
+                    self._last_release = max(self._last_release, expiry)
+            if self._expiries:
+                return 0.0
+            return now - self._last_release
+
+
+def detach():
+    """
+    Leaves the session of the JVM that launched the daemon, so a Ctrl-C or hangup of its terminal does not reach it.
+    """
+    if hasattr(os, "setsid"):
+        try:
+            os.setsid()
+        except OSError:
+            pass  # already a session leader
+
+
+def _write_record(path: str, record: dict):
+    tmp = path + ".tmp"
+    # Owner-only: the record holds the auth token
+    with os.fdopen(os.open(tmp, os.O_WRONLY | os.O_CREAT | os.O_TRUNC, 0o600), "w") as f:
+        json.dump(record, f)
+    os.replace(tmp, path)
+
+
+def _resident_mb() -> float:
+    try:
+        with open("/proc/self/status") as f:
+            for line in f:
+                if line.startswith("VmRSS:"):
+                    return int(line.split()[1]) / 1024
+    except OSError:
+        pass
+    return 0.0
+
+
+def serve_daemon(end_point_cls, load, models, exclude, registry: str, idle_timeout_ms: int, uds: str = "",
+                 max_rss_mb: int = 0):
+    """
+    Serves the entry point until no JVM held a lease for idle_timeout_ms, or until it uses more than max_rss_mb
+    while no JVM holds a lease, the next run then launching a fresh daemon.
+
+    :param end_point_cls: the EndPoint class, extended with the lease methods.
+    :param load: function loading a model by name.
+    """
+    leases = Leases()
+
+    class DaemonEndPoint(end_point_cls):
+        class Java:
+            implements = ['udem.taln.wrapper.WrapperInterface', 'udem.taln.wrapper.DaemonInterface']
+
+        @staticmethod
+        def acquireLease(ttl_ms: int) -> str:
+            return leases.acquire(ttl_ms)
+
+        @staticmethod
+        def renewLease(lease: str, ttl_ms: int) -> bool:
+            return leases.renew(lease, ttl_ms)
+
+        @staticmethod
+        def releaseLease(lease: str):
+            leases.release(lease)
+
+        @staticmethod
+        def loadModel(model: str) -> bool:
+            load(model)
+            return True
+
+    # Port 0: the system picks a free port, published in the registry with the token needed to connect to it
+    token = secrets.token_hex(32)
+    server = ClientServer(
+        java_parameters=JavaParameters(address="127.0.0.1", port=0, auth_token=token),
+        python_parameters=PythonParameters(address="127.0.0.1", port=0, auth_token=token),
+        python_server_entry_point=DaemonEndPoint())
+    port = server.get_callback_server().get_listening_port()
+
+    os.makedirs(registry, mode=0o700, exist_ok=True)
+    os.chmod(registry, 0o700)
+    record_path = os.path.join(registry, f"{port}.json")
+    _write_record(record_path, {"port": port, "pid": os.getpid(), "models": sorted(models),
+                                "exclude": sorted(exclude), "uds": uds, "authToken": token})
+    print(f"Daemon serving {sorted(models)} on port {port}, idle timeout {idle_timeout_ms} ms")
+
+    try:
+        while True:
+            idle = leases.idle_for()
+            if idle * 1000 >= idle_timeout_ms:
+                print(f"Daemon on port {port} idle for {idle_timeout_ms} ms, exiting")
+                break
+            if idle > 0 and 0 < max_rss_mb < _resident_mb():
+                print(f"Daemon on port {port} uses more than {max_rss_mb} MB, exiting while unused")
+                break
+            time.sleep(1)
+    except KeyboardInterrupt:
+        pass
+    finally:
+        # Unpublished first, so no JVM attaches to a daemon on its way out
+        try:
+            os.remove(record_path)
+        except OSError:
+            pass
+        if uds:
+            try:
+                os.remove(uds)
+            except OSError:
+                pass
+        server.shutdown()
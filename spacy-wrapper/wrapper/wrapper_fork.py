@@ -0,0 +1,116 @@
+"""
+Fork-after-load workers, the Python side of udem.taln.wrapper.SpacyForkParent.
+
+The parent loads the models, then forks one child per worker on request. Children share the model pages with the
+parent copy-on-write, so N workers cost about one model in RAM instead of N. Requests come on stdin, one per line:
+  fork <java_port> <python_port> <socket|-> <cpus|->
+                                            forks a child registering with the gateway on this port pair, pinned
+                                            to the comma separated cores if any
+  stop <java_port>                          stops that child
+Each fork and each exit of a child is reported on stdout, for Java to follow every child on its own:
+  forked <java_port> <pid>
+  exited <java_port> <pid> <code>
+The children are stopped with the parent (SIGTERM, or stdin closed once the JVM is gone).
+"""
+
+import gc
+import os
+import signal
+import sys
+import threading
+import time
+
+
+def _exit_with_parent(parent: int):
+    """
+    Exits the child when the parent is gone, even if it was killed without a chance to stop its children.
+    """
+
+    def watch():
+        while os.getppid() == parent:
+            time.sleep(1)
+        os._exit(0)
+
+    threading.Thread(target=watch, name="parent-watch", daemon=True).start()
+
+
+def _report(line: str):
+    # Also called from the SIGCHLD handler, where print could re-enter the buffered stdout
+    os.write(sys.stdout.fileno(), (line + "\n").encode())
+
+
+def serve_forks(models, load, serve_child):
+    """
+    :param models: the models loaded before any fork.
+    :param load: function loading a model by name.
+    :param serve_child: function (java_port, python_port, socket) serving a child until it is stopped.
+    """
+    for name in models:
+        load(name)
+    # Objects allocated so far are never collected, so the GC does not touch (and copy) their pages in the children
+    gc.collect()
+    gc.freeze()
+
+    # pid -> java port, until reaped
+    children = {}
+
+    def reap(*_):
+        while True:
+            try:
+                pid, status = os.waitpid(-1, os.WNOHANG)
+            except ChildProcessError:
+                return
+            if pid == 0:
+                return
+            port = children.pop(pid, None)
+            if port is not None:
+                _report(f"exited {port} {pid} {os.waitstatus_to_exitcode(status)}")
+
+    signal.signal(signal.SIGCHLD, reap)
+
+    def stop_all(*_):
+        for pid in list(children):
+            try:
+                os.kill(pid, signal.SIGTERM)
+            except ProcessLookupError:
+                pass
+        os._exit(0)
+
+    signal.signal(signal.SIGTERM, stop_all)
+    print(f"Fork parent ready with {models} (pid {os.getpid()})")
+
+    while True:
+        line = sys.stdin.readline()
+        if not line:
+            break
+        parts = line.split()
+        if len(parts) >= 3 and parts[0] == "fork":
+            java_port, python_port = int(parts[1]), int(parts[2])
+            socket = parts[3] if len(parts) > 3 and parts[3] != "-" else ""
+            cpus = {int(c) for c in parts[4].split(",")} if len(parts) > 4 and parts[4] != "-" else set()
+            parent = os.getpid()
+            # A child exiting at once is only reaped once known, and reported after its fork
+            signal.pthread_sigmask(signal.SIG_BLOCK, {signal.SIGCHLD})
+            pid = os.fork()
+            if pid == 0:
+                signal.signal(signal.SIGTERM, signal.SIG_DFL)
+                signal.signal(signal.SIGCHLD, signal.SIG_DFL)
+                signal.pthread_sigmask(signal.SIG_UNBLOCK, {signal.SIGCHLD})
+                _exit_with_parent(parent)
+                if cpus and hasattr(os, "sched_setaffinity"):
+                    os.sched_setaffinity(0, cpus)
+                try:
+                    serve_child(java_port, python_port, socket)
+                finally:
+                    os._exit(0)
+            children[pid] = java_port
+            _report(f"forked {java_port} {pid}")
+            signal.pthread_sigmask(signal.SIG_UNBLOCK, {signal.SIGCHLD})
+        elif len(parts) >= 2 and parts[0] == "stop":
+            # Reported as exited once reaped
+            for pid in [pid for pid, port in list(children.items()) if port == int(parts[1])]:
+                try:
+                    os.kill(pid, signal.SIGTERM)
+                except ProcessLookupError:
+                    pass
+    stop_all()
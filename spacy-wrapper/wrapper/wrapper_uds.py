@@ -0,0 +1,133 @@
+"""
+Binary transport over a Unix domain socket, the Python side of udem.taln.wrapper.transport.UnixSocketTransport.
+All ints are big-endian.
+
+request  : int length | byte op (1 = batch, 2 = traced batch) | short modelLength | model | int batchSize | int count
+           | count x (int id | int sentenceLength | sentence | int targetLength | target)
+           | traced : short traceLength | trace id
+response : int length | byte status (0 = ok, 1 = error)
+           | ok    : [traced : 4 x int micros (receive, queue, model, serialize)]
+                     | int count | count x (int id | short entCount | entCount x (byte code | int start | int end))
+           | error : utf-8 message
+
+Entity offsets are those of spaCy (start_char, end_char), the targets are matched on the Java side.
+"""
+
+import os
+import socketserver
+import struct
+import threading
+import time
+
+# Same order as udem.taln.wrapper.transport.LabelCodec, 0 standing for any other label
+LABELS = ["",
+          "PERSON", "NORP", "FAC", "ORG", "GPE", "LOC", "PRODUCT", "EVENT", "WORK_OF_ART",
+          "LAW", "LANGUAGE", "DATE", "TIME", "PERCENT", "MONEY", "QUANTITY", "ORDINAL", "CARDINAL"]
+CODES = {label: code for code, label in enumerate(LABELS)}
+
+OP_BATCH = 1
+OP_BATCH_TRACED = 2
+STATUS_OK = 0
+STATUS_ERROR = 1
+
+
+def _recv_exact(sock, n: int):
+    buf = bytearray()
+    while len(buf) < n:
+        chunk = sock.recv(n - len(buf))
+        if not chunk:
+            return None
+        buf.extend(chunk)
+    return bytes(buf)
+
+
+def _decode_batch(body: bytes):
+    offset = 1
+    (model_len,) = struct.unpack_from(">h", body, offset)
+    offset += 2
+    model = body[offset:offset + model_len].decode("utf-8")
+    offset += model_len
+    batch_size, count = struct.unpack_from(">ii", body, offset)
+    offset += 8
+    items = []
+    for _ in range(count):
+        item_id, sentence_len = struct.unpack_from(">ii", body, offset)
+        offset += 8
+        sentence = body[offset:offset + sentence_len].decode("utf-8")
+        offset += sentence_len
+        (target_len,) = struct.unpack_from(">i", body, offset)
+        offset += 4
+        target = body[offset:offset + target_len].decode("utf-8")
+        offset += target_len
+        items.append((item_id, sentence, target))
+    trace_id = ""
+    if body[0] == OP_BATCH_TRACED:
+        (trace_len,) = struct.unpack_from(">h", body, offset)
+        offset += 2
+        trace_id = body[offset:offset + trace_len].decode("utf-8")
+    return model, batch_size, items, trace_id
+
+
+def _encode_ents(items, ents) -> bytes:
+    out = bytearray(struct.pack(">i", len(items)))
+    for (item_id, _, _), item_ents in zip(items, ents):
+        item_ents = item_ents[:65535]
+        out += struct.pack(">iH", item_id, len(item_ents))
+        for ent in item_ents:
+            out += struct.pack(">Bii", CODES.get(ent["label"], 0), ent["start"], ent["end"])
+    return bytes(out)
+
+
+def _encode_results(items, ents, timing_ms=None) -> bytes:
+    out = struct.pack(">b", STATUS_OK)
+    if timing_ms is not None:
+        out += struct.pack(">iiii", *(int(ms * 1000) for ms in timing_ms))
+    return out + _encode_ents(items, ents)
+
+
+def serve_unix_socket(path: str, pipe, extract_ents):
+    """
+    Serves batches on the socket in a background thread, one thread per connection.
+
+    :param pipe: function (model, sentences, batch_size) -> (docs, queue_ms, model_ms)
+    :param extract_ents: function (doc) -> [{"label", "start", "end"}]
+    """
+
+    class _FrameHandler(socketserver.BaseRequestHandler):
+        def handle(self):
+            sock = self.request
+            while True:
+                header = _recv_exact(sock, 4)
+                if header is None:
+                    return
+                (length,) = struct.unpack(">i", header)
+                body = _recv_exact(sock, length)
+                if body is None:
+                    return
+                trace_id = ""
+                try:
+                    if body[0] not in (OP_BATCH, OP_BATCH_TRACED):
+                        raise ValueError(f"Unknown op {body[0]}")
+                    start = time.perf_counter()
+                    model, batch_size, items, trace_id = _decode_batch(body)
+                    receive_ms = (time.perf_counter() - start) * 1000
+                    docs, queue_ms, model_ms = pipe(model, [sentence for _, sentence, _ in items], batch_size)
+                    serialize_start = time.perf_counter()
+                    ents = [extract_ents(doc) for doc in docs]
+                    timing_ms = None
+                    if body[0] == OP_BATCH_TRACED:
+                        # Reading the entities off the docs, the few bytes of their encoding are left out
+                        timing_ms = (receive_ms, queue_ms, model_ms, (time.perf_counter() - serialize_start) * 1000)
+                    reply = _encode_results(items, ents, timing_ms)
+                except Exception as e:
+                    message = f"[{trace_id}] {e}" if trace_id else str(e)
+                    reply = struct.pack(">b", STATUS_ERROR) + message.encode("utf-8")
+                sock.sendall(struct.pack(">i", len(reply)) + reply)
+
+    if os.path.exists(path):
+        os.remove(path)
+    server = socketserver.ThreadingUnixStreamServer(path, _FrameHandler)
+    server.daemon_threads = True
+    threading.Thread(target=server.serve_forever, name="uds-server", daemon=True).start()
+    print(f"Serving batches on unix socket {path}")
+    return server